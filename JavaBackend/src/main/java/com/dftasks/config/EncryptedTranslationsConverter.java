@@ -0,0 +1,56 @@
+package com.dftasks.config;
+
+import com.dftasks.model.EncryptedTranslations;
+import com.dftasks.service.EncryptionService;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lagrar Task.translations som ett dokument med en chiffertext per språk.
+ * Vid läsning dekrypteras ingenting förrän ett språk efterfrågas.
+ */
+@Component
+public class EncryptedTranslationsConverter {
+    private final EncryptionService encryptionService;
+
+    public EncryptedTranslationsConverter(EncryptionService encryptionService) {
+        this.encryptionService = encryptionService;
+    }
+
+    @WritingConverter
+    public class TranslationsToDocumentConverter implements Converter<EncryptedTranslations, Document> {
+        @Override
+        public Document convert(EncryptedTranslations source) {
+            Document document = new Document();
+            for (String language : source.languages()) {
+                String ciphertext = source.unchangedCiphertext(language);
+                if (ciphertext == null) {
+                    String value = source.get(language);
+                    ciphertext = value != null ? encryptionService.encrypt(value) : null;
+                }
+                document.put(language, ciphertext);
+            }
+            return document;
+        }
+    }
+
+    @ReadingConverter
+    public class DocumentToTranslationsConverter implements Converter<Document, EncryptedTranslations> {
+        @Override
+        public EncryptedTranslations convert(Document source) {
+            Map<String, String> encrypted = new HashMap<>();
+            source.forEach((language, value) -> {
+                if (value instanceof String ciphertext) {
+                    encrypted.put(language, ciphertext);
+                }
+            });
+            return EncryptedTranslations.fromEncrypted(encrypted, encryptionService::decrypt);
+        }
+    }
+}
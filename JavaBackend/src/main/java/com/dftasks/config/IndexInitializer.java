@@ -0,0 +1,50 @@
+package com.dftasks.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Skapar index som deklareras med @Indexed/@CompoundIndex på modellerna.
+ * Spring Boot har automatisk indexskapande avstängt, så utan detta finns
+ * bara indexen på _id. ensureIndex gör inget om indexet redan finns.
+ */
+@Component("indexInitializer")
+public class IndexInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(IndexInitializer.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public IndexInitializer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void ensureIndexes() {
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext =
+                mongoTemplate.getConverter().getMappingContext();
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+
+        int count = 0;
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(Document.class)) {
+                continue;
+            }
+            IndexOperations indexOps = mongoTemplate.indexOps(entity.getType());
+            for (var index : resolver.resolveIndexFor(entity.getTypeInformation())) {
+                indexOps.ensureIndex(index);
+                count++;
+            }
+        }
+        logger.info("Ensured {} declared indexes", count);
+    }
+}
@@ -1,18 +1,36 @@
 package com.dftasks.config;
 
+import com.dftasks.model.Task;
+import com.dftasks.service.EncryptionService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import java.util.Arrays;
+import java.util.Map;
 
 @Configuration
 public class MongoConfig {
     
     @Bean
-    public MongoCustomConversions customConversions(EncryptedStringConverter converter) {
-        return new MongoCustomConversions(Arrays.asList(
-            converter.new StringToEncryptedStringConverter(),
-            converter.new EncryptedStringToStringConverter()
-        ));
+    public MongoCustomConversions customConversions(
+            EncryptionService encryptionService,
+            EncryptedTranslationsConverter translationsConverter) {
+        return MongoCustomConversions.create(adapter -> {
+            adapter.registerConverters(Arrays.asList(
+                translationsConverter.new TranslationsToDocumentConverter(),
+                translationsConverter.new DocumentToTranslationsConverter()
+            ));
+
+            // Bara känsliga fält krypteras. Övriga strängar lagras i klartext så
+            // att frågor, unika index och blindindexet kan matcha dem.
+            adapter.configurePropertyConversions(registrar -> {
+                registrar.registerConverter(Task.class, "reporterEmail", String.class)
+                    .writing(encryptionService::encrypt)
+                    .reading(encryptionService::decrypt);
+                registrar.registerConverter(Task.class, "metadata", Map.class)
+                    .writing(value -> (Map) encryptionService.encryptLeaves(value))
+                    .reading(value -> (Map) encryptionService.decryptLeaves(value));
+            });
+        });
     }
-} 
\ No newline at end of file
+} 
@@ -0,0 +1,25 @@
+package com.dftasks.config;
+
+import com.dftasks.model.Task;
+import com.dftasks.service.BlindIndexService;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sätter reporterEmailIndex varje gång en uppgift skrivs, även vid bulkskrivning,
+ * så att indexet alltid följer den krypterade adressen.
+ */
+@Component
+public class TaskBlindIndexCallback implements BeforeConvertCallback<Task> {
+    private final BlindIndexService blindIndexService;
+
+    public TaskBlindIndexCallback(BlindIndexService blindIndexService) {
+        this.blindIndexService = blindIndexService;
+    }
+
+    @Override
+    public Task onBeforeConvert(Task task, String collection) {
+        task.setReporterEmailIndex(blindIndexService.emailIndex(task.getReporterEmail()));
+        return task;
+    }
+}
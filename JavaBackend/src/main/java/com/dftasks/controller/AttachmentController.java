@@ -1,70 +1,117 @@
 package com.dftasks.controller;
 
+import com.dftasks.dto.AttachmentMetadata;
+import com.dftasks.exception.FileTooLargeException;
 import com.dftasks.model.Attachment;
-import com.dftasks.repository.AttachmentRepository;
+import com.dftasks.service.AttachmentService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/attachments")
 @RequiredArgsConstructor
 public class AttachmentController {
-    private final AttachmentRepository attachmentRepository;
     private final AttachmentService attachmentService;
 
     @GetMapping("/task/{taskId}")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
-    public ResponseEntity<List<Attachment>> getAttachmentsByTaskId(@PathVariable String taskId) {
-        List<Attachment> attachments = attachmentRepository.findByTaskId(taskId);
-        // Ta bort binärdata från responsen för att minska datamängden
-        attachments.forEach(attachment -> attachment.setData(null));
-        return ResponseEntity.ok(attachments);
+    public ResponseEntity<List<AttachmentMetadata>> getAttachmentsByTaskId(@PathVariable String taskId) {
+        // Endast metadata läses från databasen, aldrig filinnehållet
+        return ResponseEntity.ok(attachmentService.getAttachmentsByTaskId(taskId));
     }
 
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
-    public ResponseEntity<Resource> downloadAttachment(@PathVariable String id) {
-        Attachment attachment = attachmentRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Attachment not found"));
+    public ResponseEntity<StreamingResponseBody> downloadAttachment(
+            @PathVariable String id,
+            @RequestParam(required = false) String variant,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader) {
+        Attachment attachment = attachmentService.getAttachment(id);
+        // variant=thumbnail|preview|large ger en nedskalad bild om den är klar, annars originalet
+        AttachmentService.AttachmentContent content = attachmentService.getContent(attachment, variant);
+        long length = content.getLength();
 
-        ByteArrayResource resource = new ByteArrayResource(attachment.getData());
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        if (rangeHeader != null && length > 0) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+                // Endast ett intervall stöds; flera intervall ger hela filen
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                    partial = true;
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                        .build();
+            }
+        }
+
+        long offset = start;
+        long count = end - start + 1;
+        StreamingResponseBody body = out -> {
+            try (InputStream in = content.open()) {
+                in.skipNBytes(offset);
+                byte[] buffer = new byte[8192];
+                long remaining = count;
+                int read;
+                while (remaining > 0
+                        && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        };
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(attachment.getContentType()))
-                .header(HttpHeaders.CONTENT_DISPOSITION, 
-                        "attachment; filename=\"" + attachment.getFileName() + "\"")
-                .body(resource);
+        String contentType = content.getContentType() != null
+                ? content.getContentType()
+                : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .contentType(MediaType.parseMediaType(contentType))
+                .contentLength(Math.max(count, 0))
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + content.getFileName() + "\"");
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        return response.body(body);
     }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> deleteAttachment(@PathVariable String id) {
-        attachmentRepository.deleteById(id);
+        attachmentService.deleteAttachment(id);
         return ResponseEntity.ok().build();
     }
 
     @PostMapping("/upload/{taskId}")
     @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
-    public ResponseEntity<List<Attachment>> uploadFiles(
+    public ResponseEntity<List<AttachmentMetadata>> uploadFiles(
             @PathVariable String taskId,
-            @RequestParam("files") List<MultipartFile> files) {
+            @RequestParam("files") List<MultipartFile> files) throws FileTooLargeException {
         try {
-            List<Attachment> attachments = attachmentService.saveAttachments(files, taskId);
-            // Ta bort binärdata från responsen
-            attachments.forEach(attachment -> attachment.setData(null));
-            return ResponseEntity.ok(attachments);
+            return ResponseEntity.ok(attachmentService.saveAttachments(files, taskId));
         } catch (IOException e) {
+            if (e instanceof FileTooLargeException tooLarge) {
+                // Besvaras av GlobalExceptionHandler med felmeddelandet
+                throw tooLarge;
+            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(null);
         }
@@ -4,7 +4,7 @@ import com.dftasks.dto.AuthenticationRequest;
 import com.dftasks.dto.AuthenticationResponse;
 import com.dftasks.dto.RegisterRequest;
 import com.dftasks.model.User;
-import com.dftasks.security.JwtService;
+import com.dftasks.service.JwtService;
 import com.dftasks.service.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
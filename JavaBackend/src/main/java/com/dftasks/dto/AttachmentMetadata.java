@@ -0,0 +1,38 @@
+package com.dftasks.dto;
+
+import com.dftasks.model.Attachment;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// Bilagans metadata utan innehåll; används som projektion mot attachments
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentMetadata {
+    private String id;
+    private String taskId;
+    private String fileName;
+    private String contentType;
+    private long size;
+    private String sha256;
+    private Map<String, String> derivatives;
+    private String processingStatus;
+
+    public static AttachmentMetadata from(Attachment attachment) {
+        return AttachmentMetadata.builder()
+                .id(attachment.getId())
+                .taskId(attachment.getTaskId())
+                .fileName(attachment.getFileName())
+                .contentType(attachment.getContentType())
+                .size(attachment.getSize())
+                .sha256(attachment.getSha256())
+                .derivatives(attachment.getDerivatives())
+                .processingStatus(attachment.getProcessingStatus())
+                .build();
+    }
+}
@@ -0,0 +1,42 @@
+package com.dftasks.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Position i task-listan (createdAt, id) för keyset-paginering.
+ * Kodas som en opak base64-sträng mot klienten. Äldre uppgifter kan sakna
+ * createdAt; de sorteras sist och markören har då bara id.
+ */
+@Data
+@AllArgsConstructor
+public class TaskCursor {
+    private LocalDateTime createdAt;
+    private String id;
+
+    public String encode() {
+        String millis = createdAt != null ? String.valueOf(createdAt.toInstant(ZoneOffset.UTC).toEpochMilli()) : "";
+        String raw = millis + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TaskCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            String millis = raw.substring(0, separator);
+            LocalDateTime createdAt = millis.isEmpty() ? null : LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(Long.parseLong(millis)), ZoneOffset.UTC);
+            return new TaskCursor(createdAt, raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
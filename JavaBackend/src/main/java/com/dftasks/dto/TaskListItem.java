@@ -0,0 +1,24 @@
+package com.dftasks.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskListItem {
+    private String id;
+    private String title;
+    private String description;
+    private String status;
+    private String assignedTo;
+    private String address;
+    private String apartmentNumber;
+    private LocalDateTime dueDate;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,19 @@
+package com.dftasks.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskPage {
+    private List<TaskListItem> items;
+    // Opak fortsättningstoken, null när det inte finns fler sidor
+    private String nextCursor;
+    private boolean hasMore;
+}
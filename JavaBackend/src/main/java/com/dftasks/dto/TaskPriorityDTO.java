@@ -0,0 +1,20 @@
+package com.dftasks.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskPriorityDTO {
+    private String id;
+    private String title;
+    private String status;
+    private LocalDateTime createdAt;
+    private List<String> missingTranslations;
+    private int priority;
+}
@@ -0,0 +1,18 @@
+package com.dftasks.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Sammanfattning av en uppgift i översättningsrapporterna
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskSummary {
+    private String id;
+    private String title;
+    private String status;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,13 @@
+package com.dftasks.exception;
+
+import java.io.IOException;
+
+/**
+ * Bilagan passerade attachment.max-size medan den lästes. Är en IOException
+ * så att GridFS avbryter uppladdningen och tar bort chunks som redan skrivits.
+ */
+public class FileTooLargeException extends IOException {
+    public FileTooLargeException() {
+        super("File size exceeds maximum limit");
+    }
+}
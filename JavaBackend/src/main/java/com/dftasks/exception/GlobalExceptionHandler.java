@@ -15,6 +15,12 @@ public class GlobalExceptionHandler {
                 .body("Invalid credentials");
     }
 
+    @ExceptionHandler(FileTooLargeException.class)
+    public ResponseEntity<String> handleFileTooLargeException(FileTooLargeException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(e.getMessage());
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handleRuntimeException(RuntimeException e) {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST)
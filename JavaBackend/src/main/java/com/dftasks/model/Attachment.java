@@ -5,8 +5,11 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.Map;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -15,9 +18,21 @@ import org.springframework.data.mongodb.core.mapping.Document;
 public class Attachment {
     @Id
     private String id;
+    @Indexed
     private String taskId;
     private String fileName;
     private String contentType;
+    // Id för innehållet i GridFS
+    private String fileId;
+    // Endast för bilagor sparade före GridFS, flyttas av AttachmentMigrationService
     private byte[] data;
     private long size;
+    // Pekar på AttachmentBlob; bildvarianter sprids till bilagorna via detta fält
+    @Indexed
+    private String sha256;
+    // Bildvarianter (thumbnail, preview, large) -> GridFS-id, fylls i av ImageProcessingService
+    private Map<String, String> derivatives;
+    // ImageProcessingService.resubmitPending söker väntande bilagor
+    @Indexed
+    private String processingStatus;
 } 
\ No newline at end of file
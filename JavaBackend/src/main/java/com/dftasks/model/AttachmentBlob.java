@@ -0,0 +1,30 @@
+package com.dftasks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Delat bilageinnehåll, adresserat på SHA-256. Attachment.sha256 pekar hit.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "attachment_blobs")
+public class AttachmentBlob {
+    @Id
+    private String id; // SHA-256 av innehållet
+    private String fileId;
+    private long size;
+    private String contentType;
+    // Antal bilagor som pekar på innehållet; tas bort när det når 0
+    private long refCount;
+    private Map<String, String> derivatives;
+    private String processingStatus;
+    private LocalDateTime createdAt;
+}
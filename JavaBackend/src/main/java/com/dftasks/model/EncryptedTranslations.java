@@ -0,0 +1,90 @@
+package com.dftasks.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.UnaryOperator;
+
+/**
+ * Översättningar där varje språk är krypterat för sig. Ett språk dekrypteras
+ * först när det efterfrågas och resultatet sparas, så en lista på polska
+ * dekrypterar bara den polska texten.
+ */
+public class EncryptedTranslations {
+    // Språk -> chiffertext, som lästa från databasen
+    private final Map<String, String> encrypted;
+    // Språk -> klartext, fylls vid första åtkomst eller vid put
+    private final Map<String, String> plain = new HashMap<>();
+    private final UnaryOperator<String> decryptor;
+
+    private EncryptedTranslations(Map<String, String> encrypted, UnaryOperator<String> decryptor) {
+        this.encrypted = encrypted;
+        this.decryptor = decryptor;
+    }
+
+    /**
+     * Översättningar lästa från databasen, dekrypteras vid behov med decryptor.
+     */
+    public static EncryptedTranslations fromEncrypted(Map<String, String> encrypted, UnaryOperator<String> decryptor) {
+        return new EncryptedTranslations(new HashMap<>(encrypted), decryptor);
+    }
+
+    @JsonCreator
+    public static EncryptedTranslations of(Map<String, String> translations) {
+        EncryptedTranslations result = new EncryptedTranslations(new HashMap<>(), UnaryOperator.identity());
+        if (translations != null) {
+            result.plain.putAll(translations);
+        }
+        return result;
+    }
+
+    public String get(String language) {
+        if (plain.containsKey(language)) {
+            return plain.get(language);
+        }
+        String ciphertext = encrypted.get(language);
+        if (ciphertext == null) {
+            return null;
+        }
+        String value = decryptor.apply(ciphertext);
+        plain.put(language, value);
+        return value;
+    }
+
+    public boolean containsKey(String language) {
+        return plain.containsKey(language) || encrypted.containsKey(language);
+    }
+
+    public void put(String language, String value) {
+        plain.put(language, value);
+        encrypted.remove(language);
+    }
+
+    public Set<String> languages() {
+        Set<String> languages = new TreeSet<>(encrypted.keySet());
+        languages.addAll(plain.keySet());
+        return Collections.unmodifiableSet(languages);
+    }
+
+    /**
+     * Chiffertext för ett språk som inte har lästs eller ändrats, annars null.
+     * Används vid skrivning så att orörda språk inte krypteras om.
+     */
+    public String unchangedCiphertext(String language) {
+        return plain.containsKey(language) ? null : encrypted.get(language);
+    }
+
+    // Dekrypterar alla språk, t.ex. när hela uppgiften skickas som JSON
+    @JsonValue
+    public Map<String, String> toMap() {
+        Map<String, String> result = new LinkedHashMap<>();
+        languages().forEach(language -> result.put(language, get(language)));
+        return result;
+    }
+}
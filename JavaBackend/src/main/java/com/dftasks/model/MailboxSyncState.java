@@ -0,0 +1,26 @@
+package com.dftasks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "mailbox_sync_state")
+public class MailboxSyncState {
+    // Användarnamn + ":" + mapp
+    @Id
+    private String id;
+    // Ändras UIDVALIDITY är alla sparade UID:n ogiltiga
+    private long uidValidity;
+    // Högsta UID som har behandlats
+    private long lastUid;
+    private LocalDateTime updatedAt;
+}
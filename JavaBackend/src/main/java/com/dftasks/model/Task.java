@@ -5,9 +5,10 @@ import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
-import org.springframework.data.annotation.Field;
-import org.springframework.data.annotation.FieldType;
 import org.springframework.data.mongodb.core.mapping.PrePersist;
 import org.springframework.data.mongodb.core.mapping.PreUpdate;
 
@@ -19,16 +20,37 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "tasks")
+// Sorteringen createdAt desc, _id desc följer listningen och TaskCursor
+@CompoundIndexes({
+    @CompoundIndex(name = "status_createdAt", def = "{'status': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "assignedTo_createdAt", def = "{'assignedTo': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "status_assignedTo_createdAt", def = "{'status': 1, 'assignedTo': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "createdAt", def = "{'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "dueDate_createdAt", def = "{'dueDate': 1, 'createdAt': -1, '_id': -1}"),
+    @CompoundIndex(name = "reporterEmailIndex_createdAt", def = "{'reporterEmailIndex': 1, 'createdAt': -1, '_id': -1}"),
+    // Översättningsrapporterna, ett per målspråk i TranslationService.TARGET_LANGUAGES.
+    // status ligger sist så att sorteringen följer indexet även utan statusfilter.
+    @CompoundIndex(name = "translationStatus_en_createdAt", def = "{'translationStatus.en': 1, 'createdAt': -1, '_id': -1, 'status': 1}"),
+    @CompoundIndex(name = "translationStatus_pl_createdAt", def = "{'translationStatus.pl': 1, 'createdAt': -1, '_id': -1, 'status': 1}"),
+    @CompoundIndex(name = "translationStatus_uk_createdAt", def = "{'translationStatus.uk': 1, 'createdAt': -1, '_id': -1, 'status': 1}")
+})
 public class Task {
     @Id
     private String id;
     private String title;
     private String description;
-    @Field(targetType = FieldType.ENCRYPTED)
-    private Map<String, String> translations;
+    // Krypteras per språk, se EncryptedTranslationsConverter
+    private EncryptedTranslations translations;
+    // Översättningsstatus per målspråk: pending, done eller failed
+    private Map<String, String> translationStatus;
+    // SHA-256 av beskrivningen som översättningarna gäller, se TaskTranslationService
+    private String translationSourceHash;
     private String reporterName;
-    @Field(targetType = FieldType.ENCRYPTED)
+    // Krypteras, se MongoConfig
     private String reporterEmail;
+    // HMAC av normaliserad reporterEmail, sätts av TaskBlindIndexCallback.
+    // Lagras i klartext så att sökningen matchar; indexet reporterEmailIndex_createdAt.
+    private String reporterEmailIndex;
     private String reporterPhone;
     private String address;
     private String apartmentNumber;
@@ -44,8 +66,11 @@ public class Task {
     private LocalDateTime declinedAt;
     private String declineReason;
     private LocalDateTime updatedAt;
+    // Message-ID för uppgifter som kommit in via e-post
+    @Indexed(unique = true, sparse = true)
+    private String messageId;
 
-    @Field(targetType = FieldType.ENCRYPTED)
+    // Strängarna krypteras, se MongoConfig
     private Map<String, Object> metadata;
 
     @PrePersist
@@ -0,0 +1,26 @@
+package com.dftasks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Token för användaren som utfärdats före revokedAt är ogiltiga
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "token_revocations")
+public class TokenRevocation {
+    @Id
+    private String userId;
+    private Date revokedAt;
+    // Tas bort av TTL-index när alla berörda token ändå har gått ut
+    @Indexed(expireAfterSeconds = 0)
+    private Date expiresAt;
+}
@@ -0,0 +1,40 @@
+package com.dftasks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "translation_jobs")
+public class TranslationJob {
+    @Id
+    private String id;
+    private String status; // queued, running, completed, cancelled, failed
+    private String filterStatus;
+    private Integer limit;
+
+    // Keyset-position för senast behandlade uppgift, se TaskCursor
+    private LocalDateTime cursorCreatedAt;
+    private String cursorId;
+
+    private int processed;
+    private int succeeded;
+    private int failed;
+    private List<String> failedTaskIds;
+
+    private String workerId;
+    private LocalDateTime heartbeatAt;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,25 @@
+package com.dftasks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "translation_memory")
+public class TranslationMemoryEntry {
+    // SHA-256 av källtexten + ":" + målspråk
+    @Id
+    private String id;
+    private String sourceHash;
+    private String targetLanguage;
+    private String translatedText;
+    private LocalDateTime createdAt;
+}
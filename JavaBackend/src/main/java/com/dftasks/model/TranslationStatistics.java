@@ -0,0 +1,29 @@
+package com.dftasks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "translation_statistics")
+public class TranslationStatistics {
+    public static final String GLOBAL_ID = "global";
+
+    @Id
+    private String id;
+    private long totalTasks;
+    private long tasksWithTranslations;
+    // Antal uppgifter med translationStatus.<språk> = done
+    private Map<String, Long> translatedByLanguage;
+    private LocalDateTime updatedAt;
+    private LocalDateTime reconciledAt;
+}
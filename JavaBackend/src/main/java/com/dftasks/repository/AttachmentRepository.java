@@ -1,5 +1,6 @@
 package com.dftasks.repository;
 
+import com.dftasks.dto.AttachmentMetadata;
 import com.dftasks.model.Attachment;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
@@ -7,4 +8,7 @@ import java.util.List;
 
 public interface AttachmentRepository extends MongoRepository<Attachment, String> {
     List<Attachment> findByTaskId(String taskId);
-} 
\ No newline at end of file
+
+    // Projektion: läser bara metadatafälten, aldrig innehållet
+    List<AttachmentMetadata> findMetadataByTaskId(String taskId);
+}
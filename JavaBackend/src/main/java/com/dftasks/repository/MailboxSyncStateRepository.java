@@ -0,0 +1,7 @@
+package com.dftasks.repository;
+
+import com.dftasks.model.MailboxSyncState;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface MailboxSyncStateRepository extends MongoRepository<MailboxSyncState, String> {
+}
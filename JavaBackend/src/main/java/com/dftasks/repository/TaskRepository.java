@@ -6,7 +6,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import java.time.LocalDateTime;
 import java.util.List;
 
-public interface TaskRepository extends MongoRepository<Task, String> {
+public interface TaskRepository extends MongoRepository<Task, String>, TaskRepositoryCustom {
     List<Task> findByStatus(String status);
     List<Task> findByAssignedTo(String assignedTo);
     List<Task> findByStatusAndAssignedTo(String status, String assignedTo);
@@ -14,4 +14,4 @@ public interface TaskRepository extends MongoRepository<Task, String> {
     List<Task> findByStatusAndAssignedToIsNull(String status);
     List<Task> findByStatusAndCreatedAtBefore(String status, LocalDateTime date);
     long countByStatus(String status);
-} 
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package com.dftasks.repository;
+
+import com.dftasks.dto.TaskCursor;
+import com.dftasks.model.Task;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface TaskRepositoryCustom {
+    /**
+     * Hämtar en sida uppgifter sorterade på createdAt/id (nyast först) med
+     * endast de fält som listvyn behöver. {@code after} är null för första sidan.
+     * Av översättningarna hämtas bara {@code language}, eller inga om det är null.
+     */
+    default List<Task> findListPage(String status, String assignedTo, TaskCursor after, int limit, String language) {
+        return findListPage(status, assignedTo, null, null, after, limit, language);
+    }
+
+    /**
+     * Som ovan, begränsat till uppgifter med dueDate i [{@code dueFrom}, {@code dueTo}).
+     * Gränserna kan vara null.
+     */
+    List<Task> findListPage(String status, String assignedTo, LocalDateTime dueFrom, LocalDateTime dueTo,
+                            TaskCursor after, int limit, String language);
+
+    /**
+     * Som {@link #findListPage} för uppgifter från en anmälare, sökta på blindindexet.
+     */
+    List<Task> findReporterPage(String reporterEmailIndex, TaskCursor after, int limit, String language);
+
+    /**
+     * Som {@link #findListPage} men för uppgifter där {@code language} inte är
+     * färdigöversatt. Bara id, titel, status och createdAt hämtas.
+     */
+    List<Task> findMissingTranslationPage(String language, String status, TaskCursor after, int limit);
+
+    long countMissingTranslations(String language, String status);
+
+    long countTranslated(String language);
+}
@@ -0,0 +1,122 @@
+package com.dftasks.repository;
+
+import com.dftasks.dto.TaskCursor;
+import com.dftasks.model.Task;
+import com.dftasks.service.TaskTranslationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class TaskRepositoryCustomImpl implements TaskRepositoryCustom {
+    // Av translations tas bara det begärda språket med, se findListPage
+    private static final String[] LIST_FIELDS = {
+            "title", "description", "status", "assignedTo",
+            "address", "apartmentNumber", "dueDate", "createdAt"
+    };
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Task> findListPage(String status, String assignedTo, LocalDateTime dueFrom, LocalDateTime dueTo,
+                                   TaskCursor after, int limit, String language) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (status != null) {
+            criteria.add(Criteria.where("status").is(status));
+        }
+        if (assignedTo != null) {
+            criteria.add(Criteria.where("assignedTo").is(assignedTo));
+        }
+        // Kalendern hämtar en månad i taget; använder indexet dueDate_createdAt
+        if (dueFrom != null || dueTo != null) {
+            Criteria due = Criteria.where("dueDate");
+            if (dueFrom != null) {
+                due.gte(dueFrom);
+            }
+            if (dueTo != null) {
+                due.lt(dueTo);
+            }
+            criteria.add(due);
+        }
+        return findPage(criteria, after, limit, language);
+    }
+
+    @Override
+    public List<Task> findReporterPage(String reporterEmailIndex, TaskCursor after, int limit, String language) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(Criteria.where("reporterEmailIndex").is(reporterEmailIndex));
+        return findPage(criteria, after, limit, language);
+    }
+
+    private List<Task> findPage(List<Criteria> criteria, TaskCursor after, int limit, String language) {
+        if (after != null) {
+            criteria.add(after(after));
+        }
+
+        Query query = criteria.isEmpty()
+                ? new Query()
+                : new Query(new Criteria().andOperator(criteria.toArray(new Criteria[0])));
+        query.with(Sort.by(Sort.Direction.DESC, "createdAt", "id")).limit(limit);
+        query.fields().include(LIST_FIELDS);
+        if (language != null) {
+            query.fields().include("translations." + language);
+        }
+
+        return mongoTemplate.find(query, Task.class);
+    }
+
+    @Override
+    public List<Task> findMissingTranslationPage(String language, String status, TaskCursor after, int limit) {
+        Criteria criteria = missingTranslation(language, status);
+        if (after != null) {
+            criteria = new Criteria().andOperator(criteria, after(after));
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "id"))
+                .limit(limit);
+        query.fields().include("title", "status", "createdAt");
+        return mongoTemplate.find(query, Task.class);
+    }
+
+    @Override
+    public long countMissingTranslations(String language, String status) {
+        return mongoTemplate.count(new Query(missingTranslation(language, status)), Task.class);
+    }
+
+    @Override
+    public long countTranslated(String language) {
+        return mongoTemplate.count(new Query(Criteria.where("translationStatus." + language)
+                .is(TaskTranslationService.STATUS_DONE)), Task.class);
+    }
+
+    // Använder indexet translationStatus_<språk>_createdAt, se Task
+    private static Criteria missingTranslation(String language, String status) {
+        Criteria criteria = TaskTranslationService.notTranslated(language);
+        return status != null ? criteria.and("status").is(status) : criteria;
+    }
+
+    /**
+     * Keyset: allt som ligger strikt efter markören i (createdAt desc, id desc).
+     * Uppgifter utan createdAt sorteras sist och måste tas med explicit,
+     * eftersom createdAt &lt; x aldrig matchar null.
+     */
+    static Criteria after(TaskCursor cursor) {
+        if (cursor.getCreatedAt() == null) {
+            return new Criteria().andOperator(
+                    Criteria.where("createdAt").is(null),
+                    Criteria.where("id").lt(cursor.getId()));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(cursor.getCreatedAt()),
+                new Criteria().andOperator(
+                        Criteria.where("createdAt").is(cursor.getCreatedAt()),
+                        Criteria.where("id").lt(cursor.getId())),
+                Criteria.where("createdAt").is(null));
+    }
+}
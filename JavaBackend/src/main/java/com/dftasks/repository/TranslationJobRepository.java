@@ -0,0 +1,10 @@
+package com.dftasks.repository;
+
+import com.dftasks.model.TranslationJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface TranslationJobRepository extends MongoRepository<TranslationJob, String> {
+    List<TranslationJob> findTop20ByOrderByCreatedAtDesc();
+}
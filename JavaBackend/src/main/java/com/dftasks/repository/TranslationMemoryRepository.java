@@ -0,0 +1,7 @@
+package com.dftasks.repository;
+
+import com.dftasks.model.TranslationMemoryEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface TranslationMemoryRepository extends MongoRepository<TranslationMemoryEntry, String> {
+}
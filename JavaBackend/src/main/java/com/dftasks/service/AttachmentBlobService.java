@@ -0,0 +1,113 @@
+package com.dftasks.service;
+
+import com.dftasks.model.AttachmentBlob;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Referensräknat, innehållsadresserat bilageinnehåll. Samma fil som laddas
+ * upp eller mejlas in flera gånger lagras bara en gång i GridFS.
+ */
+@Service
+@RequiredArgsConstructor
+public class AttachmentBlobService {
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentBlobService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final AttachmentStorageService storageService;
+
+    /**
+     * Tar en referens till redan lagrat innehåll, eller returnerar null om
+     * det inte finns. Används när hashen är känd innan något har skrivits.
+     */
+    public AttachmentBlob acquireExisting(String sha256) {
+        Query query = new Query(Criteria.where("id").is(sha256).and("refCount").gt(0));
+        return mongoTemplate.findAndModify(query, new Update().inc("refCount", 1),
+                FindAndModifyOptions.options().returnNew(true), AttachmentBlob.class);
+    }
+
+    /**
+     * Registrerar nyss lagrat innehåll och tar en referens till det. Fanns
+     * samma innehåll redan tas den nya GridFS-filen bort och den befintliga
+     * används.
+     */
+    public AttachmentBlob register(String sha256, String fileId, long size, String contentType) {
+        Update update = new Update()
+                .inc("refCount", 1)
+                .setOnInsert("fileId", fileId)
+                .setOnInsert("size", size)
+                .setOnInsert("contentType", contentType)
+                .setOnInsert("processingStatus",
+                        ImageProcessingService.isProcessable(contentType) ? ImageProcessingService.STATUS_PENDING : null)
+                .setOnInsert("createdAt", LocalDateTime.now());
+
+        AttachmentBlob blob = mongoTemplate.findAndModify(
+                new Query(Criteria.where("id").is(sha256)),
+                update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                AttachmentBlob.class);
+
+        if (!fileId.equals(blob.getFileId())) {
+            storageService.delete(fileId);
+        }
+        return blob;
+    }
+
+    /**
+     * Släpper en referens. Returnerar false om innehållet inte är registrerat,
+     * t.ex. för bilagor som sparades innan innehållet började delas.
+     */
+    public boolean release(String sha256) {
+        AttachmentBlob blob = mongoTemplate.findAndModify(
+                new Query(Criteria.where("id").is(sha256)),
+                new Update().inc("refCount", -1),
+                FindAndModifyOptions.options().returnNew(true),
+                AttachmentBlob.class);
+        if (blob == null) {
+            return false;
+        }
+        if (blob.getRefCount() <= 0) {
+            collect(sha256);
+        }
+        return true;
+    }
+
+    /**
+     * Städar upp innehåll som blivit utan referenser, t.ex. om processen dog
+     * mellan att en bilaga togs bort och att innehållet samlades in.
+     */
+    @Scheduled(fixedDelayString = "${attachment.blob-gc-interval-ms:3600000}")
+    public void collectUnreferenced() {
+        Query query = new Query(Criteria.where("refCount").lte(0)).limit(500);
+        query.fields().include("id");
+        mongoTemplate.find(query, AttachmentBlob.class).forEach(blob -> collect(blob.getId()));
+    }
+
+    private void collect(String sha256) {
+        // Villkoret på refCount gör att en samtidig ny referens vinner över borttagningen
+        AttachmentBlob removed = mongoTemplate.findAndRemove(
+                new Query(Criteria.where("id").is(sha256).and("refCount").lte(0)), AttachmentBlob.class);
+        if (removed == null) {
+            return;
+        }
+
+        try {
+            storageService.delete(removed.getFileId());
+            if (removed.getDerivatives() != null) {
+                removed.getDerivatives().values().forEach(storageService::delete);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to delete content for blob {}: {}", sha256, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.dftasks.service;
+
+import com.dftasks.model.Attachment;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Flyttar bilagor som fortfarande har innehållet i data-fältet till GridFS.
+ * Körs i bakgrunden vid uppstart och en bilaga i taget, så att bara en
+ * blob åt gången finns i minnet. Kan avbrytas och köras om utan dubbletter.
+ */
+@Service
+@RequiredArgsConstructor
+public class AttachmentMigrationService implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentMigrationService.class);
+    private static final int ID_BATCH_SIZE = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final AttachmentStorageService storageService;
+
+    @Value("${attachment.migrate-inline-on-startup:true}")
+    private boolean enabled;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        Thread migrationThread = new Thread(this::migrateInlineAttachments);
+        migrationThread.setDaemon(true);
+        migrationThread.setName("attachment-migration");
+        migrationThread.start();
+    }
+
+    public void migrateInlineAttachments() {
+        int migrated = 0;
+        try {
+            List<Attachment> batch;
+            do {
+                // Hämta bara id:n, innehållet läses en bilaga i taget nedan
+                Query idQuery = new Query(inlineCriteria()).limit(ID_BATCH_SIZE);
+                idQuery.fields().include("id");
+                batch = mongoTemplate.find(idQuery, Attachment.class);
+
+                for (Attachment ref : batch) {
+                    if (migrate(ref.getId())) {
+                        migrated++;
+                    }
+                }
+            } while (batch.size() == ID_BATCH_SIZE);
+
+            if (migrated > 0) {
+                logger.info("Migrated {} inline attachments to GridFS", migrated);
+            }
+        } catch (Exception e) {
+            logger.error("Attachment migration stopped after {} attachments", migrated, e);
+        }
+    }
+
+    private boolean migrate(String id) throws IOException {
+        Attachment attachment = mongoTemplate.findOne(
+                new Query(inlineCriteria().and("id").is(id)), Attachment.class);
+        if (attachment == null) {
+            return false;
+        }
+
+        AttachmentStorageService.StoredFile stored = storageService.store(
+                new ByteArrayInputStream(attachment.getData()),
+                attachment.getFileName(),
+                attachment.getContentType());
+
+        Update update = new Update()
+                .set("fileId", stored.getFileId())
+                .set("size", stored.getLength())
+                .unset("data");
+        boolean updated = mongoTemplate.updateFirst(
+                new Query(inlineCriteria().and("id").is(id)), update, Attachment.class).getModifiedCount() > 0;
+
+        if (!updated) {
+            // Någon annan hann före, ta bort vår kopia
+            storageService.delete(stored.getFileId());
+        }
+        return updated;
+    }
+
+    private static Criteria inlineCriteria() {
+        return Criteria.where("data").exists(true).and("fileId").exists(false);
+    }
+}
@@ -1,29 +1,39 @@
 package com.dftasks.service;
 
+import com.dftasks.dto.AttachmentMetadata;
 import com.dftasks.model.Attachment;
+import com.dftasks.model.AttachmentBlob;
 import com.dftasks.repository.AttachmentRepository;
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.awt.image.Graphics2D;
-import java.awt.image.RenderingHints;
-
 @Service
 @RequiredArgsConstructor
 public class AttachmentService {
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentService.class);
+
     private final AttachmentRepository attachmentRepository;
+    private final MongoTemplate mongoTemplate;
+    private final AttachmentStorageService storageService;
+    private final AttachmentBlobService blobService;
+    private final ImageProcessingService imageProcessingService;
 
     @Value("${attachment.max-size:10485760}") // 10MB default
     private long maxFileSize;
@@ -40,15 +50,165 @@ public class AttachmentService {
     public Attachment saveAttachment(MultipartFile file, String taskId) throws IOException {
         validateFile(file);
 
-        Attachment attachment = Attachment.builder()
+        // Uppladdningen ligger redan i en temporärfil, så hashen kan räknas innan
+        // något skrivs. Finns innehållet redan räcker det att öka referensräknaren.
+        IngestInputStream probe;
+        try (InputStream content = file.getInputStream()) {
+            probe = inspect(content, file.getContentType());
+            probe.transferTo(OutputStream.nullOutputStream());
+        }
+        AttachmentBlob existing = blobService.acquireExisting(probe.getSha256());
+        if (existing != null) {
+            return attach(taskId, file.getOriginalFilename(), existing);
+        }
+
+        try (InputStream content = file.getInputStream()) {
+            return saveAttachment(taskId, file.getOriginalFilename(), file.getContentType(), content);
+        }
+    }
+
+    /**
+     * Strömmar innehållet till GridFS och sparar bilagan som pekar på det.
+     * Storlek, SHA-256 och filtyp tas fram under strömningen; uppladdningen
+     * avbryts så fort den passerar attachment.max-size. Visar det sig att
+     * innehållet redan finns tas den nya kopian bort och den gamla återanvänds.
+     */
+    public Attachment saveAttachment(String taskId, String fileName, String declaredType, InputStream content)
+            throws IOException {
+        return attach(taskId, fileName, storeContent(fileName, declaredType, content));
+    }
+
+    /**
+     * Lagrar innehållet utan att koppla det till någon uppgift. Den som anropar
+     * äger referensen och ska antingen lämna den till {@link #attach} eller
+     * släppa den med {@link #releaseContent}.
+     */
+    public AttachmentBlob storeContent(String fileName, String declaredType, InputStream content) throws IOException {
+        IngestInputStream ingest = inspect(content, declaredType);
+        String contentType = ingest.sniffContentType(declaredType);
+
+        AttachmentStorageService.StoredFile stored = storageService.store(ingest, fileName, contentType);
+        if (stored.getLength() == 0) {
+            storageService.delete(stored.getFileId());
+            throw new IllegalArgumentException("File is empty");
+        }
+
+        return blobService.register(ingest.getSha256(), stored.getFileId(), stored.getLength(), contentType);
+    }
+
+    public void releaseContent(AttachmentBlob blob) {
+        blobService.release(blob.getId());
+    }
+
+    private IngestInputStream inspect(InputStream content, String declaredType) throws IOException {
+        IngestInputStream ingest = new IngestInputStream(content, maxFileSize);
+        String contentType = ingest.sniffContentType(declaredType);
+        if (contentType == null || !ALLOWED_CONTENT_TYPES.contains(contentType)) {
+            throw new IllegalArgumentException("File type not allowed");
+        }
+        return ingest;
+    }
+
+    /**
+     * Sparar en bilaga som tar över referensen till redan lagrat innehåll.
+     */
+    public Attachment attach(String taskId, String fileName, AttachmentBlob blob) {
+        Attachment saved;
+        try {
+            saved = attachmentRepository.save(toAttachment(taskId, fileName, blob));
+        } catch (RuntimeException e) {
+            blobService.release(blob.getId());
+            throw e;
+        }
+        scheduleProcessing(saved);
+        return saved;
+    }
+
+    /**
+     * Sparar flera bilagor i en ordnad bulkskrivning. Bilagor som inte kom
+     * med släpper sin referens till innehållet.
+     *
+     * @return antal sparade bilagor
+     */
+    public int attachAll(List<Attachment> attachments) {
+        if (attachments.isEmpty()) {
+            return 0;
+        }
+
+        int inserted = attachments.size();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Attachment.class)
+                    .insert(attachments)
+                    .execute();
+        } catch (BulkOperationException e) {
+            // Ordnad skrivning: allt före första felet är sparat
+            inserted = e.getResult().getInsertedCount();
+            logger.warn("Saved {} of {} attachments: {}", inserted, attachments.size(), e.getMessage());
+        }
+
+        for (int i = 0; i < attachments.size(); i++) {
+            if (i < inserted) {
+                scheduleProcessing(attachments.get(i));
+            } else {
+                blobService.release(attachments.get(i).getSha256());
+            }
+        }
+        return inserted;
+    }
+
+    public Attachment toAttachment(String taskId, String fileName, AttachmentBlob blob) {
+        return Attachment.builder()
                 .taskId(taskId)
-                .fileName(file.getOriginalFilename())
-                .contentType(file.getContentType())
-                .data(file.getBytes())
-                .size(file.getSize())
+                .fileName(fileName)
+                .contentType(blob.getContentType())
+                .fileId(blob.getFileId())
+                .size(blob.getSize())
+                .sha256(blob.getId())
+                .derivatives(blob.getDerivatives())
+                .processingStatus(blob.getProcessingStatus())
                 .build();
+    }
+
+    private void scheduleProcessing(Attachment attachment) {
+        if (ImageProcessingService.STATUS_PENDING.equals(attachment.getProcessingStatus())) {
+            // Varianterna skapas i bakgrunden, uppladdningen väntar inte på dem
+            imageProcessingService.schedule(attachment.getSha256());
+        }
+    }
 
-        return attachmentRepository.save(attachment);
+    /**
+     * Öppnar bilagans innehåll som en ström. Bilagor som ännu inte har
+     * migrerats till GridFS läses från det gamla data-fältet.
+     */
+    public InputStream openContent(Attachment attachment) throws IOException {
+        if (attachment.getFileId() != null) {
+            return storageService.openStream(attachment.getFileId());
+        }
+        if (attachment.getData() != null) {
+            return new ByteArrayInputStream(attachment.getData());
+        }
+        throw new RuntimeException("Attachment content not found");
+    }
+
+    /**
+     * Väljer innehåll för nedladdning: en färdig bildvariant om den begärs
+     * och finns, annars originalet.
+     */
+    public AttachmentContent getContent(Attachment attachment, String variant) {
+        if (variant != null && attachment.getDerivatives() != null
+                && attachment.getDerivatives().containsKey(variant)) {
+            String fileId = attachment.getDerivatives().get(variant);
+            return new AttachmentContent(
+                    attachment.getFileName(),
+                    "image/jpeg",
+                    storageService.length(fileId),
+                    () -> storageService.openStream(fileId));
+        }
+        return new AttachmentContent(
+                attachment.getFileName(),
+                attachment.getContentType(),
+                attachment.getSize(),
+                () -> openContent(attachment));
     }
 
     public void validateFile(MultipartFile file) {
@@ -65,8 +225,8 @@ public class AttachmentService {
         }
     }
 
-    public List<Attachment> getAttachmentsByTaskId(String taskId) {
-        return attachmentRepository.findByTaskId(taskId);
+    public List<AttachmentMetadata> getAttachmentsByTaskId(String taskId) {
+        return attachmentRepository.findMetadataByTaskId(taskId);
     }
 
     public Attachment getAttachment(String id) {
@@ -75,67 +235,54 @@ public class AttachmentService {
     }
 
     public void deleteAttachment(String id) {
-        attachmentRepository.deleteById(id);
+        attachmentRepository.findById(id).ifPresent(this::delete);
     }
 
     public void deleteAttachmentsByTaskId(String taskId) {
-        List<Attachment> attachments = attachmentRepository.findByTaskId(taskId);
-        attachmentRepository.deleteAll(attachments);
+        attachmentRepository.findMetadataByTaskId(taskId)
+                .forEach(metadata -> deleteAttachment(metadata.getId()));
+    }
+
+    private void delete(Attachment attachment) {
+        attachmentRepository.delete(attachment);
+        // Innehållet kan delas med andra bilagor
+        if (attachment.getSha256() != null && blobService.release(attachment.getSha256())) {
+            return;
+        }
+        if (attachment.getFileId() != null) {
+            storageService.delete(attachment.getFileId());
+        }
+        if (attachment.getDerivatives() != null) {
+            attachment.getDerivatives().values().forEach(storageService::delete);
+        }
     }
 
-    public List<Attachment> saveAttachments(List<MultipartFile> files, String taskId) throws IOException {
-        List<Attachment> savedAttachments = new ArrayList<>();
+    public List<AttachmentMetadata> saveAttachments(List<MultipartFile> files, String taskId) throws IOException {
+        List<AttachmentMetadata> savedAttachments = new ArrayList<>();
         
         for (MultipartFile file : files) {
-            validateFile(file);
-            byte[] processedData = processFileData(file);
-            
-            Attachment attachment = Attachment.builder()
-                    .taskId(taskId)
-                    .fileName(file.getOriginalFilename())
-                    .contentType(file.getContentType())
-                    .data(processedData)
-                    .size(processedData.length)
-                    .build();
-
-            savedAttachments.add(attachmentRepository.save(attachment));
+            Attachment saved = saveAttachment(file, taskId);
+            savedAttachments.add(AttachmentMetadata.from(saved));
         }
         
         return savedAttachments;
     }
 
-    private byte[] processFileData(MultipartFile file) throws IOException {
-        if (file.getContentType() != null && file.getContentType().startsWith("image/")) {
-            return compressImage(file.getBytes());
+    @Data
+    @AllArgsConstructor
+    public static class AttachmentContent {
+        private String fileName;
+        private String contentType;
+        private long length;
+        private ContentOpener opener;
+
+        public InputStream open() throws IOException {
+            return opener.open();
         }
-        return file.getBytes();
     }
 
-    private byte[] compressImage(byte[] imageData) throws IOException {
-        BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageData));
-        
-        // Skala ned bilden om den är för stor
-        int maxDimension = 1920; // Full HD
-        if (originalImage.getWidth() > maxDimension || originalImage.getHeight() > maxDimension) {
-            double scale = Math.min(
-                (double) maxDimension / originalImage.getWidth(),
-                (double) maxDimension / originalImage.getHeight()
-            );
-            
-            int newWidth = (int) (originalImage.getWidth() * scale);
-            int newHeight = (int) (originalImage.getHeight() * scale);
-            
-            BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, originalImage.getType());
-            Graphics2D g = resizedImage.createGraphics();
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-            g.drawImage(originalImage, 0, 0, newWidth, newHeight, null);
-            g.dispose();
-            
-            originalImage = resizedImage;
-        }
-        
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageIO.write(originalImage, "JPEG", outputStream);
-        return outputStream.toByteArray();
+    @FunctionalInterface
+    public interface ContentOpener {
+        InputStream open() throws IOException;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package com.dftasks.service;
+
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lagrar bilagornas innehåll i GridFS (bucket enligt spring.data.mongodb.gridfs.bucket)
+ * så att filerna delas upp i chunks och kan strömmas utan att läsas in i minnet.
+ */
+@Service
+@RequiredArgsConstructor
+public class AttachmentStorageService {
+    private final GridFsTemplate gridFsTemplate;
+
+    /**
+     * Fel vid läsning av {@code content} kastas vidare som IOException, t.ex.
+     * FileTooLargeException. GridFS har då redan tagit bort filens chunks.
+     */
+    public StoredFile store(InputStream content, String fileName, String contentType) throws IOException {
+        long[] length = new long[1];
+        InputStream counting = new FilterInputStream(content) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    length[0] += n;
+                }
+                return n;
+            }
+        };
+        ObjectId fileId;
+        try {
+            fileId = gridFsTemplate.store(counting, fileName, contentType, new Document());
+        } catch (MongoGridFSException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return new StoredFile(fileId.toHexString(), length[0]);
+    }
+
+    public InputStream openStream(String fileId) throws IOException {
+        return gridFsTemplate.getResource(findFile(fileId)).getInputStream();
+    }
+
+    public long length(String fileId) {
+        return findFile(fileId).getLength();
+    }
+
+    public void delete(String fileId) {
+        gridFsTemplate.delete(byId(fileId));
+    }
+
+    private GridFSFile findFile(String fileId) {
+        GridFSFile file = gridFsTemplate.findOne(byId(fileId));
+        if (file == null) {
+            throw new RuntimeException("Attachment content not found");
+        }
+        return file;
+    }
+
+    private static Query byId(String fileId) {
+        return new Query(Criteria.where("_id").is(new ObjectId(fileId)));
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class StoredFile {
+        private String fileId;
+        private long length;
+    }
+}
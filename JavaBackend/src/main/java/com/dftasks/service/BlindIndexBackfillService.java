@@ -0,0 +1,83 @@
+package com.dftasks.service;
+
+import com.dftasks.model.Task;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Fyller i reporterEmailIndex på uppgifter som sparades innan blindindexet
+ * fanns. Körs i bakgrunden vid uppstart, sida för sida på id, och kan
+ * avbrytas och köras om.
+ */
+@Service
+@RequiredArgsConstructor
+public class BlindIndexBackfillService implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BlindIndexBackfillService.class);
+    private static final int PAGE_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final BlindIndexService blindIndexService;
+
+    @Value("${encryption.blind-index.backfill-on-startup:true}")
+    private boolean enabled;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        Thread backfillThread = new Thread(this::backfill);
+        backfillThread.setDaemon(true);
+        backfillThread.setName("blind-index-backfill");
+        backfillThread.start();
+    }
+
+    public void backfill() {
+        int updated = 0;
+        String lastId = null;
+        try {
+            List<Task> page;
+            do {
+                Criteria criteria = Criteria.where("reporterEmail").exists(true)
+                        .and("reporterEmailIndex").exists(false);
+                if (lastId != null) {
+                    criteria = criteria.and("id").gt(lastId);
+                }
+                Query query = new Query(criteria).with(Sort.by("id")).limit(PAGE_SIZE);
+                query.fields().include("id").include("reporterEmail");
+                page = mongoTemplate.find(query, Task.class);
+
+                for (Task task : page) {
+                    lastId = task.getId();
+                    String index = blindIndexService.emailIndex(task.getReporterEmail());
+                    if (index == null) {
+                        continue;
+                    }
+                    // Uppdateringen ändrar bara indexfältet, villkoret skyddar mot samtidiga skrivningar
+                    updated += (int) mongoTemplate.updateFirst(
+                            new Query(Criteria.where("id").is(task.getId()).and("reporterEmailIndex").exists(false)),
+                            new Update().set("reporterEmailIndex", index),
+                            Task.class).getModifiedCount();
+                }
+            } while (page.size() == PAGE_SIZE);
+
+            if (updated > 0) {
+                logger.info("Backfilled reporter email index on {} tasks", updated);
+            }
+        } catch (Exception e) {
+            logger.error("Reporter email index backfill stopped after {} tasks", updated, e);
+        }
+    }
+}
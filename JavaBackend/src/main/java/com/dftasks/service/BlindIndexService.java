@@ -0,0 +1,71 @@
+package com.dftasks.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Blindindex för krypterade fält: HMAC-SHA256 av det normaliserade värdet
+ * med en egen nyckel. Samma värde ger alltid samma index, så fältet kan
+ * sökas med likhet i Mongo utan att klartexten lagras.
+ */
+@Service
+public class BlindIndexService {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    // Mac är inte trådsäker, varje tråd får en egen
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::newMac);
+
+    @Value("${encryption.blind-index-key}")
+    private String blindIndexKey;
+
+    private SecretKeySpec keySpec;
+
+    @PostConstruct
+    public void init() {
+        keySpec = new SecretKeySpec(blindIndexKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    /**
+     * Index för en e-postadress. "Namn &lt;adress&gt;" och skiftläge ger samma
+     * index som bara adressen.
+     */
+    public String emailIndex(String email) {
+        String normalized = normalizeEmail(email);
+        if (normalized == null) {
+            return null;
+        }
+        return HexFormat.of().formatHex(mac.get().doFinal(normalized.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String normalizeEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String address = email;
+        int start = address.lastIndexOf('<');
+        int end = address.lastIndexOf('>');
+        if (start >= 0 && end > start) {
+            address = address.substring(start + 1, end);
+        }
+        address = address.trim().toLowerCase(Locale.ROOT);
+        return address.isEmpty() ? null : address;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(keySpec);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+}
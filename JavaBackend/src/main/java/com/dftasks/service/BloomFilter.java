@@ -0,0 +1,63 @@
+package com.dftasks.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Enkelt Bloomfilter för strängar. Svarar aldrig fel på "finns inte", men
+ * kan ge falska träffar som får kontrolleras mot en exakt mängd.
+ */
+public class BloomFilter {
+    private final BitSet bits;
+    private final int size;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries förväntat antal element
+     * @param falsePositiveRate önskad andel falska träffar, t.ex. 0.01
+     */
+    public BloomFilter(int expectedEntries, double falsePositiveRate) {
+        int entries = Math.max(expectedEntries, 1);
+        this.size = Math.max(64, (int) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.hashCount = Math.max(1, (int) Math.round((double) size / entries * Math.log(2)));
+        this.bits = new BitSet(size);
+    }
+
+    public void add(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            bits.set(index(h1 + i * h2));
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash64(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            if (!bits.get(index(h1 + i * h2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % size;
+    }
+
+    // FNV-1a 64 bitar, sedan blandning så att båda halvorna kan användas som oberoende hashar
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
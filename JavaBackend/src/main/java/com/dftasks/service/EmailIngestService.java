@@ -0,0 +1,412 @@
+package com.dftasks.service;
+
+import com.dftasks.model.Attachment;
+import com.dftasks.model.AttachmentBlob;
+import com.dftasks.model.MailboxSyncState;
+import com.dftasks.model.Task;
+import com.dftasks.repository.MailboxSyncStateRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.bulk.BulkWriteError;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Andra steget i e-postinläsningen. Lyssnartråden tolkar meddelanden och
+ * lägger dem i en begränsad kö; här sparas de som uppgifter av en pool
+ * arbetstrådar. När kön är full väntar lyssnartråden. Varje arbetstråd tar
+ * allt som väntar (upp till email.ingest.batch-size) och sparar uppgifter
+ * och bilagor med en bulkskrivning var.
+ *
+ * Håller också reda på hur långt inkorgen är behandlad: det sparade UID:t
+ * flyttas bara fram till det högsta UID där alla tidigare är sparade (eller
+ * redan fanns). Misslyckas skrivningen, t.ex. för att databasen inte svarar,
+ * behåller arbetstråden meddelandena och försöker igen med ökande väntetid.
+ */
+@Service
+// Det unika indexet på messageId måste finnas innan första mejlet sparas
+@DependsOn("indexInitializer")
+public class EmailIngestService {
+    private static final Logger logger = LoggerFactory.getLogger(EmailIngestService.class);
+    private static final int DUPLICATE_KEY = 11000;
+    private static final long MIN_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+
+    private final AttachmentService attachmentService;
+    private final TaskTranslationService taskTranslationService;
+    private final PendingTaskService pendingTaskService;
+    private final MailboxSyncStateRepository syncStateRepository;
+    private final MongoTemplate mongoTemplate;
+    private final BlockingQueue<IncomingEmail> queue;
+    private final int workers;
+    private final int batchSize;
+    private final long batchWaitMs;
+
+    // UID:n som har lämnats till kön men inte sparats än
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    // UID:n som är sparade men ännu inte markerade som lästa i inkorgen
+    private final List<Long> savedUids = new ArrayList<>();
+    private MailboxSyncState syncState;
+    private long highestQueuedUid;
+
+    public EmailIngestService(
+            AttachmentService attachmentService,
+            TaskTranslationService taskTranslationService,
+            PendingTaskService pendingTaskService,
+            MailboxSyncStateRepository syncStateRepository,
+            MongoTemplate mongoTemplate,
+            @Value("${email.ingest.queue-capacity:50}") int queueCapacity,
+            @Value("${email.ingest.workers:4}") int workers,
+            @Value("${email.ingest.batch-size:50}") int batchSize,
+            @Value("${email.ingest.batch-wait-ms:200}") long batchWaitMs) {
+        this.attachmentService = attachmentService;
+        this.taskTranslationService = taskTranslationService;
+        this.pendingTaskService = pendingTaskService;
+        this.syncStateRepository = syncStateRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.batchWaitMs = batchWaitMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work);
+            worker.setDaemon(true);
+            worker.setName("email-ingest-" + i);
+            worker.start();
+        }
+    }
+
+    /**
+     * Returnerar högsta UID som redan är lämnat för behandling, eller -1 om
+     * det saknas ett giltigt läge för mappen och inkorgen måste läsas in från
+     * början.
+     */
+    public synchronized long resume(String mailboxId, long uidValidity) {
+        if (syncState == null || !syncState.getId().equals(mailboxId)) {
+            syncState = syncStateRepository.findById(mailboxId).orElse(null);
+        }
+        if (syncState == null || syncState.getUidValidity() != uidValidity) {
+            syncState = MailboxSyncState.builder()
+                    .id(mailboxId)
+                    .uidValidity(uidValidity)
+                    .lastUid(0)
+                    .build();
+            inFlight.clear();
+            savedUids.clear();
+            highestQueuedUid = 0;
+        }
+
+        long lastUid = Math.max(syncState.getLastUid(), highestQueuedUid);
+        return lastUid > 0 ? lastUid : -1;
+    }
+
+    /**
+     * Lämnar ett tolkat meddelande till arbetstrådarna. Blockerar när kön är full.
+     */
+    public void submit(IncomingEmail email) throws InterruptedException {
+        synchronized (this) {
+            inFlight.add(email.getUid());
+            highestQueuedUid = Math.max(highestQueuedUid, email.getUid());
+        }
+        queue.put(email);
+    }
+
+    /**
+     * Markerar att allt till och med uid är genomgånget, även meddelanden som
+     * hoppades över.
+     */
+    public synchronized void markScanned(long uid) {
+        highestQueuedUid = Math.max(highestQueuedUid, uid);
+        advanceWatermark();
+    }
+
+    /**
+     * Returnerar och glömmer UID:n som har sparats som uppgifter sedan förra
+     * anropet, så att lyssnaren kan sätta SEEN på dem.
+     */
+    public synchronized long[] takeSavedUids(long uidValidity) {
+        if (syncState == null || syncState.getUidValidity() != uidValidity) {
+            savedUids.clear();
+            return new long[0];
+        }
+        long[] uids = savedUids.stream().mapToLong(Long::longValue).toArray();
+        savedUids.clear();
+        return uids;
+    }
+
+    private void work() {
+        List<IncomingEmail> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                fillBatch(batch);
+                persistWithRetry(batch);
+            } catch (InterruptedException e) {
+                // Det som inte hann sparas ligger kvar som pågående och läses in igen vid omstart
+                Thread.currentThread().interrupt();
+                return;
+            }
+            complete(batch);
+            batch.clear();
+        }
+    }
+
+    // Ger inte upp: UID-läget står still tills meddelandena är sparade
+    private void persistWithRetry(List<IncomingEmail> batch) throws InterruptedException {
+        List<IncomingEmail> remaining = batch;
+        long delay = MIN_RETRY_DELAY_MS;
+        while (true) {
+            try {
+                remaining = persist(remaining);
+            } catch (RuntimeException e) {
+                logger.error("Error saving {} messages", remaining.size(), e);
+            }
+            if (remaining.isEmpty()) {
+                return;
+            }
+            logger.warn("{} messages not saved, retrying in {} ms", remaining.size(), delay);
+            Thread.sleep(delay);
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    // Väntar en kort stund så att en skur av mejl hamnar i samma skrivning
+    private void fillBatch(List<IncomingEmail> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitMs);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            IncomingEmail next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Sparar uppgifter och bilagor för meddelandena.
+     *
+     * @return meddelanden som inte kunde sparas och ska försökas igen
+     */
+    private List<IncomingEmail> persist(List<IncomingEmail> emails) {
+        // Id:n sätts här så att bilagorna kan peka på uppgifterna utan att vänta på svar.
+        // Vid ett nytt försök återanvänds samma id.
+        List<Task> tasks = new ArrayList<>(emails.size());
+        for (IncomingEmail email : emails) {
+            if (email.getTaskId() == null) {
+                email.setTaskId(new ObjectId().toHexString());
+            }
+            Task task = Task.builder()
+                    .id(email.getTaskId())
+                    .title(email.getSubject() != null ? email.getSubject() : "Ny felanmälan")
+                    .description(email.getBody())
+                    .status("pending")
+                    .createdAt(LocalDateTime.now())
+                    .reporterEmail(email.getFrom())
+                    .messageId(email.getMessageId())
+                    .build();
+            taskTranslationService.markPending(task);
+            tasks.add(task);
+        }
+
+        WriteResult[] results = insertTasks(tasks);
+
+        List<Attachment> attachments = new ArrayList<>();
+        List<Task> savedTasks = new ArrayList<>();
+        List<IncomingEmail> failed = new ArrayList<>();
+        for (int i = 0; i < emails.size(); i++) {
+            IncomingEmail email = emails.get(i);
+            switch (results[i]) {
+                case SAVED -> accept(email, tasks.get(i), savedTasks, attachments);
+                case ALREADY_SAVED -> {
+                    if (email.isTaskAccepted()) {
+                        // Försöket som sparade uppgiften har redan räknat den, kopplat
+                        // bilagorna och schemalagt översättningarna
+                        markSaved(email);
+                    } else {
+                        // Skrevs men bekräftades aldrig, så inget av det hann göras
+                        accept(email, tasks.get(i), savedTasks, attachments);
+                    }
+                }
+                case DUPLICATE -> {
+                    email.getAttachments().forEach(attachment -> attachmentService.releaseContent(attachment.getBlob()));
+                    markSaved(email);
+                }
+                // Lämnas oläst i inkorgen så att någon kan titta på det
+                case REJECTED -> email.getAttachments()
+                        .forEach(attachment -> attachmentService.releaseContent(attachment.getBlob()));
+                // Innehållet behålls till nästa försök
+                case FAILED -> failed.add(email);
+            }
+        }
+
+        try {
+            attachmentService.attachAll(attachments);
+        } catch (RuntimeException e) {
+            // Uppgifterna finns redan; referenserna släpps inte eftersom en del kan ha sparats
+            logger.error("Failed to save {} attachments for new tasks", attachments.size(), e);
+        }
+        if (!savedTasks.isEmpty()) {
+            pendingTaskService.invalidateStatistics();
+        }
+        taskTranslationService.recordCreated(savedTasks.size());
+        savedTasks.forEach(taskTranslationService::scheduleTranslations);
+        logger.debug("Saved {} of {} messages as tasks", savedTasks.size(), emails.size());
+        return failed;
+    }
+
+    private void accept(IncomingEmail email, Task task, List<Task> savedTasks, List<Attachment> attachments) {
+        email.setTaskAccepted(true);
+        savedTasks.add(task);
+        for (IncomingAttachment attachment : email.getAttachments()) {
+            attachments.add(attachmentService.toAttachment(
+                    task.getId(), attachment.getFileName(), attachment.getBlob()));
+        }
+        markSaved(email);
+    }
+
+    /**
+     * Sparar uppgifterna med ordnade bulkskrivningar. En dubblett (samma
+     * Message-ID) hoppas över och resten skrivs om, likaså en uppgift som
+     * databasen vägrar ta emot. Andra fel (anslutning, timeout) avbryter och
+     * resten markeras för ett nytt försök.
+     */
+    private WriteResult[] insertTasks(List<Task> tasks) {
+        WriteResult[] results = new WriteResult[tasks.size()];
+        Arrays.fill(results, WriteResult.FAILED);
+        int from = 0;
+        while (from < tasks.size()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Task.class)
+                        .insert(tasks.subList(from, tasks.size()))
+                        .execute();
+                Arrays.fill(results, from, tasks.size(), WriteResult.SAVED);
+                return results;
+            } catch (BulkOperationException e) {
+                if (e.getErrors().isEmpty()) {
+                    // Bara skrivbekräftelsen saknas; nästa försök ger dubbletter för det som hann skrivas
+                    logger.warn("Bulk insert of tasks not acknowledged: {}", e.getMessage());
+                    return results;
+                }
+                BulkWriteError error = e.getErrors().get(0);
+                int failed = from + error.getIndex();
+                Arrays.fill(results, from, failed, WriteResult.SAVED);
+                Task task = tasks.get(failed);
+                if (error.getCode() == DUPLICATE_KEY) {
+                    // Samma id betyder att ett tidigare försök faktiskt sparade uppgiften
+                    results[failed] = isSaved(task) ? WriteResult.ALREADY_SAVED : WriteResult.DUPLICATE;
+                    logger.info("Message {} already saved as a task, skipping", task.getMessageId());
+                } else {
+                    results[failed] = WriteResult.REJECTED;
+                    logger.error("Task for message {} rejected by the database: {}",
+                            task.getMessageId(), error.getMessage());
+                }
+                from = failed + 1;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to save {} tasks: {}", tasks.size() - from, e.getMessage());
+                return results;
+            }
+        }
+        return results;
+    }
+
+    private boolean isSaved(Task task) {
+        return mongoTemplate.exists(new Query(Criteria.where("id").is(task.getId())), Task.class);
+    }
+
+    private synchronized void markSaved(IncomingEmail email) {
+        if (syncState != null && email.getUidValidity() == syncState.getUidValidity()) {
+            savedUids.add(email.getUid());
+        }
+    }
+
+    // UID-läget flyttas fram en gång per batch, när alla i den är behandlade
+    private synchronized void complete(List<IncomingEmail> emails) {
+        boolean removed = false;
+        for (IncomingEmail email : emails) {
+            if (syncState != null && email.getUidValidity() == syncState.getUidValidity()) {
+                removed |= inFlight.remove(email.getUid());
+            }
+        }
+        if (removed) {
+            advanceWatermark();
+        }
+    }
+
+    private void advanceWatermark() {
+        if (syncState == null) {
+            return;
+        }
+        long watermark = inFlight.isEmpty() ? highestQueuedUid : inFlight.first() - 1;
+        if (watermark > syncState.getLastUid()) {
+            syncState.setLastUid(watermark);
+            syncState.setUpdatedAt(LocalDateTime.now());
+            syncStateRepository.save(syncState);
+        }
+    }
+
+    @Data
+    @Builder
+    public static class IncomingEmail {
+        private long uidValidity;
+        private long uid;
+        private String messageId;
+        private String subject;
+        private String from;
+        private String body;
+        private List<IncomingAttachment> attachments;
+        // Sätts vid första försöket att spara
+        private String taskId;
+        // Uppgiften är bekräftat sparad och har räknats och schemalagts
+        private boolean taskAccepted;
+    }
+
+    private enum WriteResult {
+        SAVED,
+        // Samma id: ett tidigare försök för meddelandet skrev uppgiften
+        ALREADY_SAVED,
+        // Fanns redan, t.ex. inläst före en omstart
+        DUPLICATE,
+        // Databasen vägrar ta emot dokumentet, ett nytt försök hjälper inte
+        REJECTED,
+        // Inte skrivet, försöks igen
+        FAILED
+    }
+
+    // Innehållet är redan lagrat, bilagan sparas när uppgiften finns
+    @Data
+    @AllArgsConstructor
+    public static class IncomingAttachment {
+        private String fileName;
+        private AttachmentBlob blob;
+    }
+}
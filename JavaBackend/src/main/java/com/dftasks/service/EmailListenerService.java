@@ -1,38 +1,41 @@
 package com.dftasks.service;
 
-import com.dftasks.model.Task;
-import com.dftasks.repository.TaskRepository;
-import com.dftasks.model.Attachment;
-import com.dftasks.repository.AttachmentRepository;
+import com.dftasks.exception.FileTooLargeException;
+import com.dftasks.model.AttachmentBlob;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
 import jakarta.mail.*;
-import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimePart;
+import jakarta.mail.internet.MimeUtility;
 import jakarta.mail.search.FlagTerm;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
 import java.io.InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import jakarta.mail.FolderClosedException;
 import jakarta.mail.StoreClosedException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class EmailListenerService {
     private static final Logger logger = LoggerFactory.getLogger(EmailListenerService.class);
-    private final TaskRepository taskRepository;
-    private final AttachmentRepository attachmentRepository;
-    private final TranslationService translationService;
-    private static final List<String> TARGET_LANGUAGES = List.of("en", "pl", "uk");
+    private final AttachmentService attachmentService;
+    private final EmailIngestService ingestService;
     private volatile boolean isRunning = true;
 
     @Value("${email.host}")
@@ -47,6 +50,32 @@ public class EmailListenerService {
     @Value("${email.password}")
     private String password;
 
+    // idle = håll anslutningen öppen och låt servern meddela ny post, poll = fråga med jämna mellanrum
+    @Value("${email.mode:idle}")
+    private String mode;
+
+    @Value("${email.poll-interval-ms:30000}")
+    private long pollIntervalMs;
+
+    // Servrar får koppla ner en IDLE efter 30 minuter, så den förnyas med NOOP innan dess
+    @Value("${email.keepalive-interval-ms:600000}")
+    private long keepAliveIntervalMs;
+
+    // Så många meddelanden hämtas och behandlas åt gången när en kö ska betas av
+    @Value("${email.sync.batch-size:100}")
+    private int syncBatchSize;
+
+    // Meddelanden upp till denna storlek hämtas i sin helhet i samma FETCH
+    @Value("${email.sync.prefetch-max-bytes:262144}")
+    private int prefetchMaxBytes;
+
+    // Längre brödtext än så kortas av; bilagor begränsas av attachment.max-size
+    @Value("${email.max-body-bytes:1048576}")
+    private int maxBodyBytes;
+
+    private static final long MIN_RECONNECT_DELAY_MS = 5000;
+    private static final long MAX_RECONNECT_DELAY_MS = 300000; // 5 minuter
+
     @PostConstruct
     public void startListening() {
         Thread emailThread = new Thread(this::listenForEmails);
@@ -57,52 +86,225 @@ public class EmailListenerService {
     }
 
     private void listenForEmails() {
+        long reconnectDelay = MIN_RECONNECT_DELAY_MS;
         while (isRunning) {
-            Store store = null;
-            Folder inbox = null;
+            IMAPStore store = null;
+            IMAPFolder inbox = null;
             try {
-                Properties props = createMailProperties();
-                Session session = Session.getInstance(props);
-                store = session.getStore("imaps");
+                Session session = Session.getInstance(createMailProperties());
+                store = (IMAPStore) session.getStore("imaps");
                 store.connect(host, username, password);
-                
-                inbox = store.getFolder("INBOX");
+
+                inbox = (IMAPFolder) store.getFolder("INBOX");
                 inbox.open(Folder.READ_WRITE);
-                
-                Message[] messages = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
-                logger.info("Found {} unread messages", messages.length);
+                reconnectDelay = MIN_RECONNECT_DELAY_MS;
 
-                for (Message message : messages) {
-                    try {
-                        processEmail(message);
-                        message.setFlag(Flags.Flag.SEEN, true);
-                        logger.debug("Processed message: {}", message.getSubject());
-                    } catch (Exception e) {
-                        logger.error("Error processing message: {}", message.getSubject(), e);
+                boolean idleSupported = store.hasCapability("IDLE");
+                if ("idle".equalsIgnoreCase(mode) && idleSupported) {
+                    logger.info("Connected to mailbox, waiting for new mail with IDLE");
+                    listenWithIdle(inbox);
+                } else {
+                    if ("idle".equalsIgnoreCase(mode)) {
+                        logger.warn("Mail server does not support IDLE, falling back to polling");
                     }
+                    listenWithPolling(inbox);
                 }
-
-                Thread.sleep(30000); // 30 sekunder mellan kontroller
+                logger.warn("Mailbox connection closed, will reconnect");
             } catch (FolderClosedException | StoreClosedException e) {
-                logger.warn("Connection lost, will retry: {}", e.getMessage());
-                sleep(5000); // Kort väntan vid anslutningsfel
+                logger.warn("Connection lost, will retry in {} ms: {}", reconnectDelay, e.getMessage());
             } catch (Exception e) {
-                logger.error("Unexpected error in email listener", e);
-                sleep(60000); // Längre väntan vid andra fel
+                logger.error("Unexpected error in email listener, will retry in {} ms", reconnectDelay, e);
             } finally {
                 closeQuietly(inbox, store);
             }
+
+            if (isRunning) {
+                sleep(reconnectDelay);
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+            }
         }
     }
 
+    /**
+     * Väntar med IMAP IDLE tills servern meddelar ändringar i inkorgen. En
+     * separat tråd skickar NOOP med jämna mellanrum, vilket både håller
+     * anslutningen vid liv och avbryter IDLE så att den startas om.
+     */
+    private void listenWithIdle(IMAPFolder inbox) throws MessagingException {
+        Thread keepAlive = new Thread(() -> keepAlive(inbox));
+        keepAlive.setDaemon(true);
+        keepAlive.setName("email-keepalive");
+        keepAlive.start();
+        try {
+            syncNewMessages(inbox);
+            while (isRunning && inbox.isOpen()) {
+                inbox.idle(true);
+                syncNewMessages(inbox);
+            }
+        } finally {
+            keepAlive.interrupt();
+        }
+    }
+
+    private void keepAlive(IMAPFolder inbox) {
+        while (inbox.isOpen()) {
+            try {
+                Thread.sleep(keepAliveIntervalMs);
+                inbox.doCommand(protocol -> {
+                    protocol.simpleCommand("NOOP", null);
+                    return null;
+                });
+            } catch (InterruptedException e) {
+                return;
+            } catch (MessagingException e) {
+                // Lyssnartråden märker att anslutningen är borta och återansluter
+                logger.debug("Keep-alive failed: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void listenWithPolling(IMAPFolder inbox) throws MessagingException {
+        while (isRunning && inbox.isOpen()) {
+            syncNewMessages(inbox);
+            sleep(pollIntervalMs);
+        }
+    }
+
+    /**
+     * Hämtar meddelanden med UID högre än det senast behandlade. Läget sparas
+     * per mapp tillsammans med UIDVALIDITY, så att SEEN-flaggan (som även
+     * sätts av människor) inte styr vad som blir uppgifter.
+     */
+    private void syncNewMessages(IMAPFolder inbox) throws MessagingException {
+        long uidValidity = inbox.getUIDValidity();
+        long lastUid = ingestService.resume(syncStateId(), uidValidity);
+        markSavedAsSeen(inbox, uidValidity);
+
+        if (lastUid < 0) {
+            // Inget giltigt läge: utgå från olästa som tidigare, och fortsätt sedan från UIDNEXT
+            long uidNext = inbox.getUIDNext();
+            logger.info("No valid sync state for INBOX (UIDVALIDITY {}), starting from unread messages", uidValidity);
+            Message[] unread = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
+            processInBatches(inbox, unread, uidValidity, 0, uidNext);
+            ingestService.markScanned(uidNext - 1);
+            return;
+        }
+
+        // n:* returnerar alltid minst det sista meddelandet, så det filtreras bort nedan
+        Message[] messages = inbox.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+        processInBatches(inbox, messages, uidValidity, lastUid, Long.MAX_VALUE);
+    }
+
+    private void processInBatches(IMAPFolder inbox, Message[] messages, long uidValidity, long lastUid, long uidLimit)
+            throws MessagingException {
+        if (messages.length == 0) {
+            return;
+        }
+
+        // UID:n hämtas för alla i ett anrop för att kunna filtrera och sortera
+        FetchProfile uidProfile = new FetchProfile();
+        uidProfile.add(UIDFolder.FetchProfileItem.UID);
+        inbox.fetch(messages, uidProfile);
+
+        List<Message> pending = new ArrayList<>();
+        for (Message message : messages) {
+            long uid = inbox.getUID(message);
+            if (uid > lastUid && uid < uidLimit) {
+                pending.add(message);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        logger.info("Found {} new messages", pending.size());
+
+        for (int from = 0; from < pending.size(); from += syncBatchSize) {
+            Message[] batch = pending.subList(from, Math.min(from + syncBatchSize, pending.size()))
+                    .toArray(new Message[0]);
+            prefetch(inbox, batch);
+
+            for (Message message : batch) {
+                long uid = inbox.getUID(message);
+                try {
+                    // Tolkningen sker här, sparandet i EmailIngestService; blockerar när kön är full
+                    ingestService.submit(parseEmail(message, uidValidity, uid));
+                } catch (FolderClosedException | StoreClosedException e) {
+                    throw e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    isRunning = false;
+                    return;
+                } catch (Exception e) {
+                    // Ett trasigt meddelande får inte stoppa resten av kön
+                    logger.error("Error processing message {}: {}", uid, message.getSubject(), e);
+                    ingestService.markScanned(uid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sätter SEEN på meddelanden som har sparats som uppgifter. Flaggan är bara
+     * en hjälp för den som läser inkorgen, men den får inte sättas på något som
+     * inte är sparat. Under IDLE sätts den vid nästa uppvaknande.
+     */
+    private void markSavedAsSeen(IMAPFolder inbox, long uidValidity) throws MessagingException {
+        long[] uids = ingestService.takeSavedUids(uidValidity);
+        if (uids.length == 0) {
+            return;
+        }
+        // Meddelanden som hunnit raderas blir null
+        Message[] messages = Arrays.stream(inbox.getMessagesByUID(uids))
+                .filter(Objects::nonNull)
+                .toArray(Message[]::new);
+        if (messages.length > 0) {
+            inbox.setFlags(messages, new Flags(Flags.Flag.SEEN), true);
+        }
+    }
+
+    // Kuvert, struktur och storlek för hela batchen i en FETCH, därefter hela innehållet för små meddelanden
+    private void prefetch(IMAPFolder inbox, Message[] batch) throws MessagingException {
+        FetchProfile profile = new FetchProfile();
+        profile.add(FetchProfile.Item.ENVELOPE);
+        profile.add(FetchProfile.Item.CONTENT_INFO);
+        profile.add(FetchProfile.Item.SIZE);
+        inbox.fetch(batch, profile);
+
+        Message[] small = Arrays.stream(batch)
+                .filter(message -> {
+                    try {
+                        int size = message.getSize();
+                        return size >= 0 && size <= prefetchMaxBytes;
+                    } catch (MessagingException e) {
+                        return false;
+                    }
+                })
+                .toArray(Message[]::new);
+        if (small.length > 0) {
+            FetchProfile bodies = new FetchProfile();
+            bodies.add(IMAPFolder.FetchProfileItem.MESSAGE);
+            inbox.fetch(small, bodies);
+        }
+    }
+
+    private String syncStateId() {
+        return username + ":INBOX";
+    }
+
     private Properties createMailProperties() {
         Properties props = new Properties();
         props.setProperty("mail.store.protocol", "imaps");
         props.setProperty("mail.imaps.host", host);
         props.setProperty("mail.imaps.port", String.valueOf(port));
         props.setProperty("mail.imaps.ssl.enable", "true");
-        props.setProperty("mail.imaps.timeout", "10000");
+        // Under IDLE kommer inget från servern förrän nästa NOOP, så lästimeouten måste vara längre än det
+        long readTimeout = "idle".equalsIgnoreCase(mode) ? keepAliveIntervalMs + 60000 : 10000;
+        props.setProperty("mail.imaps.timeout", String.valueOf(readTimeout));
         props.setProperty("mail.imaps.connectiontimeout", "10000");
+        // Stora delar hämtas i block i stället för i ett enda svar
+        props.setProperty("mail.imaps.partialfetch", "true");
+        props.setProperty("mail.imaps.fetchsize", "65536");
         return props;
     }
 
@@ -133,87 +335,111 @@ public class EmailListenerService {
         }
     }
 
-    private void processEmail(Message message) throws Exception {
-        String content = getTextFromMessage(message);
-        String subject = message.getSubject();
-        String from = message.getFrom()[0].toString();
+    private EmailIngestService.IncomingEmail parseEmail(Message message, long uidValidity, long uid) throws Exception {
+        String messageId = message instanceof MimeMessage mimeMessage ? mimeMessage.getMessageID() : null;
+        if (messageId == null) {
+            // Utan Message-ID identifieras meddelandet av sin plats i brevlådan
+            messageId = syncStateId() + ":" + uidValidity + ":" + uid;
+        }
 
-        // Översätt innehåll till alla målspråk
-        Map<String, String> translations = new HashMap<>();
-        translations.put("sv", content); // Originalspråk (svenska)
-        
-        for (String lang : TARGET_LANGUAGES) {
-            try {
-                String translatedContent = translationService.translate(content, lang);
-                translations.put(lang, translatedContent);
-                logger.debug("Translated content to {}", lang);
-            } catch (Exception e) {
-                logger.warn("Failed to translate content to {}: {}", lang, e.getMessage());
-                translations.put(lang, content); // Använd originaltext vid fel
-            }
+        StringBuilder content = new StringBuilder();
+        List<EmailIngestService.IncomingAttachment> attachments = new ArrayList<>();
+        try {
+            readParts(message, content, attachments);
+        } catch (Exception e) {
+            // Meddelandet lämnas inte vidare, så redan lagrat innehåll släpps
+            attachments.forEach(attachment -> attachmentService.releaseContent(attachment.getBlob()));
+            throw e;
         }
 
-        Task task = Task.builder()
-                .title(subject != null ? subject : "Ny felanmälan")
-                .description(content)
-                .translations(translations)
-                .status("pending")
-                .createdAt(LocalDateTime.now())
-                .reporterEmail(from)
+        return EmailIngestService.IncomingEmail.builder()
+                .uidValidity(uidValidity)
+                .uid(uid)
+                .messageId(messageId)
+                .subject(message.getSubject())
+                .from(message.getFrom()[0].toString())
+                .body(content.toString())
+                .attachments(attachments)
                 .build();
-
-        Task savedTask = taskRepository.save(task);
-        
-        // Hantera bilagor om meddelandet är multipart
-        if (message.isMimeType("multipart/*")) {
-            Multipart multipart = (Multipart) message.getContent();
-            processAttachments(multipart, savedTask.getId());
-        }
     }
 
-    private void processAttachments(Multipart multipart, String taskId) throws Exception {
-        for (int i = 0; i < multipart.getCount(); i++) {
-            BodyPart bodyPart = multipart.getBodyPart(i);
-            if (!Part.ATTACHMENT.equalsIgnoreCase(bodyPart.getDisposition())) {
-                continue;
+    /**
+     * Går igenom MIME-strukturen en gång. Text läses in (upp till
+     * email.max-body-bytes), bilagor och inbäddade bilder strömmas del för del
+     * direkt till lagringen. För stora meddelanden hämtas varje del först när
+     * den läses, i block om mail.imaps.fetchsize, så hela meddelandet ligger
+     * aldrig i minnet.
+     */
+    private void readParts(Part part, StringBuilder content, List<EmailIngestService.IncomingAttachment> attachments)
+            throws MessagingException, IOException {
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                readParts(multipart.getBodyPart(i), content, attachments);
             }
+        } else if (isAttachment(part)) {
+            storeAttachment(part, attachments);
+        } else if (part.isMimeType("text/plain")) {
+            content.append(readText(part));
+        }
+    }
 
-            String fileName = bodyPart.getFileName();
-            InputStream is = bodyPart.getInputStream();
-            byte[] attachmentData = is.readAllBytes();
-
-            Attachment attachment = Attachment.builder()
-                    .taskId(taskId)
-                    .fileName(fileName)
-                    .contentType(bodyPart.getContentType())
-                    .data(attachmentData)
-                    .size(attachmentData.length)
-                    .build();
-
-            attachmentRepository.save(attachment);
+    private boolean isAttachment(Part part) throws MessagingException {
+        if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+            return true;
+        }
+        // Inbäddade bilder (t.ex. foton inklistrade i mejlet) har Content-ID eller inline med filnamn
+        if (part.isMimeType("image/*")) {
+            return part.getFileName() != null
+                    || (part instanceof MimePart mimePart && mimePart.getContentID() != null);
         }
+        return false;
     }
 
-    private String getTextFromMessage(Message message) throws Exception {
-        if (message.isMimeType("text/plain")) {
-            return message.getContent().toString();
-        } else if (message.isMimeType("multipart/*")) {
-            MimeMultipart mimeMultipart = (MimeMultipart) message.getContent();
-            return getTextFromMimeMultipart(mimeMultipart);
+    private void storeAttachment(Part part, List<EmailIngestService.IncomingAttachment> attachments)
+            throws MessagingException {
+        String fileName = null;
+        try {
+            fileName = part.getFileName();
+            if (fileName == null) {
+                fileName = "inline-" + (attachments.size() + 1) + "." + subtype(part.getContentType());
+            }
+            try (InputStream is = part.getInputStream()) {
+                AttachmentBlob blob = attachmentService.storeContent(fileName, part.getContentType(), is);
+                attachments.add(new EmailIngestService.IncomingAttachment(fileName, blob));
+            }
+        } catch (FolderClosedException | StoreClosedException e) {
+            throw e;
+        } catch (IllegalArgumentException | FileTooLargeException e) {
+            // För stor eller otillåten bilaga hoppas över, resten av mejlet sparas
+            logger.warn("Skipping attachment {}: {}", fileName, e.getMessage());
+        } catch (Exception e) {
+            logger.warn("Failed to read attachment {}, skipping: {}", fileName, e.getMessage());
         }
-        return "";
     }
 
-    private String getTextFromMimeMultipart(MimeMultipart mimeMultipart) throws Exception {
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < mimeMultipart.getCount(); i++) {
-            BodyPart bodyPart = mimeMultipart.getBodyPart(i);
-            if (bodyPart.isMimeType("text/plain")) {
-                result.append(bodyPart.getContent());
-            } else if (bodyPart.isMimeType("multipart/*")) {
-                result.append(getTextFromMimeMultipart((MimeMultipart) bodyPart.getContent()));
+    private String readText(Part part) throws MessagingException, IOException {
+        Charset charset = StandardCharsets.UTF_8;
+        try {
+            String name = new ContentType(part.getContentType()).getParameter("charset");
+            if (name != null) {
+                charset = Charset.forName(MimeUtility.javaCharset(name));
             }
+        } catch (Exception e) {
+            // Okänd teckenkodning, läs som UTF-8
+        }
+
+        try (InputStream in = part.getInputStream()) {
+            byte[] bytes = in.readNBytes(maxBodyBytes);
+            return new String(bytes, charset);
+        }
+    }
+
+    private static String subtype(String contentType) {
+        try {
+            return new ContentType(contentType).getSubType().toLowerCase();
+        } catch (Exception e) {
+            return "bin";
         }
-        return result.toString();
     }
 } 
\ No newline at end of file
@@ -1,46 +1,87 @@
 package com.dftasks.service;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Krypterar fält med AES-GCM. Chiffertexten har formatet
+ * "v1:" + base64(IV || chiffertext || tagg). Värden utan versionsprefix är
+ * skrivna med den gamla AES/ECB-varianten och kan fortfarande läsas.
+ *
+ * Chiffertexten är olika varje gång, så krypterade fält går inte att söka på.
+ * Bara de känsliga fälten krypteras, se MongoConfig.
+ */
 @Service
 public class EncryptionService {
     private static final Logger logger = LoggerFactory.getLogger(EncryptionService.class);
     private static final String ALGORITHM = "AES";
-    
+    private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String VERSION_PREFIX = "v1:";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+
+    // Cipher är inte trådsäker men dyr att skapa, så varje tråd får en egen
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> newCipher(GCM_TRANSFORMATION));
+    private static final ThreadLocal<Cipher> LEGACY_CIPHER = ThreadLocal.withInitial(() -> newCipher(ALGORITHM));
+
+    private final SecureRandom random = new SecureRandom();
+
     @Value("${encryption.key}")
     private String encryptionKey;
-    
-    private SecretKeySpec getKeySpec() {
-        byte[] key = encryptionKey.getBytes(StandardCharsets.UTF_8);
-        return new SecretKeySpec(key, ALGORITHM);
+
+    private SecretKeySpec keySpec;
+
+    @PostConstruct
+    public void init() {
+        keySpec = new SecretKeySpec(encryptionKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
     }
-    
+
     public String encrypt(String data) {
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, getKeySpec());
-            return Base64.getEncoder().encodeToString(
-                cipher.doFinal(data.getBytes(StandardCharsets.UTF_8))
-            );
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+
+            Cipher cipher = GCM_CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            byte[] encrypted = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+
+            ByteBuffer payload = ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted);
+            return VERSION_PREFIX + Base64.getEncoder().encodeToString(payload.array());
         } catch (Exception e) {
             logger.error("Encryption failed: {}", e.getMessage());
             return data;
         }
     }
-    
+
     public String decrypt(String encryptedData) {
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, getKeySpec());
+            if (!encryptedData.startsWith(VERSION_PREFIX)) {
+                return decryptLegacy(encryptedData);
+            }
+
+            byte[] payload = Base64.getDecoder().decode(encryptedData.substring(VERSION_PREFIX.length()));
+            Cipher cipher = GCM_CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(TAG_LENGTH_BITS, payload, 0, IV_LENGTH));
             return new String(
-                cipher.doFinal(Base64.getDecoder().decode(encryptedData)),
+                cipher.doFinal(payload, IV_LENGTH, payload.length - IV_LENGTH),
                 StandardCharsets.UTF_8
             );
         } catch (Exception e) {
@@ -48,4 +89,86 @@ public class EncryptionService {
             return encryptedData;
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Krypterar alla strängar i en karta eller lista, på alla nivåer. Nycklar
+     * och andra värden lämnas orörda.
+     */
+    public Object encryptLeaves(Object value) {
+        return mapLeaves(value, this::encrypt);
+    }
+
+    public Object decryptLeaves(Object value) {
+        return mapLeaves(value, this::decrypt);
+    }
+
+    /**
+     * Som decrypt, men returnerar null om värdet inte är chiffertext skriven
+     * med den här nyckeln. Används för att hitta gamla krypterade värden.
+     */
+    public String tryDecrypt(String value) {
+        try {
+            byte[] plain;
+            if (value.startsWith(VERSION_PREFIX)) {
+                byte[] payload = Base64.getDecoder().decode(value.substring(VERSION_PREFIX.length()));
+                if (payload.length <= IV_LENGTH) {
+                    return null;
+                }
+                Cipher cipher = GCM_CIPHER.get();
+                cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(TAG_LENGTH_BITS, payload, 0, IV_LENGTH));
+                plain = cipher.doFinal(payload, IV_LENGTH, payload.length - IV_LENGTH);
+            } else {
+                byte[] encrypted = Base64.getDecoder().decode(value);
+                if (encrypted.length == 0 || encrypted.length % 16 != 0) {
+                    return null;
+                }
+                Cipher cipher = LEGACY_CIPHER.get();
+                cipher.init(Cipher.DECRYPT_MODE, keySpec);
+                plain = cipher.doFinal(encrypted);
+            }
+            // ECB saknar autentisering, så kräv också giltig UTF-8
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(plain))
+                    .toString();
+        } catch (IllegalArgumentException | GeneralSecurityException | CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static Object mapLeaves(Object value, UnaryOperator<String> operator) {
+        if (value instanceof String text) {
+            return operator.apply(text);
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            map.forEach((key, nested) -> result.put(String.valueOf(key), mapLeaves(nested, operator)));
+            return result;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> result = new ArrayList<>(list.size());
+            list.forEach(nested -> result.add(mapLeaves(nested, operator)));
+            return result;
+        }
+        return value;
+    }
+
+    // Värden skrivna före AES-GCM (AES/ECB utan IV)
+    private String decryptLegacy(String encryptedData) throws GeneralSecurityException {
+        Cipher cipher = LEGACY_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, keySpec);
+        return new String(
+            cipher.doFinal(Base64.getDecoder().decode(encryptedData)),
+            StandardCharsets.UTF_8
+        );
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(transformation + " not available", e);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.dftasks.service;
+
+import com.dftasks.model.Attachment;
+import com.dftasks.model.AttachmentBlob;
+import org.imgscalr.Scalr;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Skapar nedskalade varianter av uppladdade bilder i en begränsad trådpool,
+ * så att uppladdningen inte väntar på skalning och JPEG-kodning. Varianterna
+ * hör till det delade innehållet (AttachmentBlob) och skapas en gång per
+ * unik bild, oavsett hur många bilagor som pekar på den.
+ */
+@Service
+public class ImageProcessingService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageProcessingService.class);
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_DONE = "done";
+    public static final String STATUS_FAILED = "failed";
+
+    // Variant -> största sida i pixlar
+    private static final Map<String, Integer> VARIANTS = new LinkedHashMap<>();
+    static {
+        VARIANTS.put("thumbnail", 200);
+        VARIANTS.put("preview", 800);
+        VARIANTS.put("large", 1920); // Full HD
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final AttachmentStorageService storageService;
+    private final ThreadPoolTaskExecutor imageProcessingExecutor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public ImageProcessingService(
+            MongoTemplate mongoTemplate,
+            AttachmentStorageService storageService,
+            @Qualifier("imageProcessingExecutor") ThreadPoolTaskExecutor imageProcessingExecutor) {
+        this.mongoTemplate = mongoTemplate;
+        this.storageService = storageService;
+        this.imageProcessingExecutor = imageProcessingExecutor;
+    }
+
+    public static boolean isProcessable(String contentType) {
+        return contentType != null && contentType.startsWith("image/");
+    }
+
+    /**
+     * Köar innehållet för bearbetning. Är kön full ligger det kvar som pending
+     * och plockas upp av {@link #resubmitPending()}.
+     */
+    public void schedule(String blobId) {
+        submit(blobId, () -> process(blobId));
+    }
+
+    // Bilagor som sparades innan innehållet började delas har inget AttachmentBlob
+    private void scheduleAttachment(String attachmentId) {
+        submit("attachment:" + attachmentId, () -> processAttachment(attachmentId));
+    }
+
+    private void submit(String key, Runnable work) {
+        if (!inFlight.add(key)) {
+            return;
+        }
+        try {
+            imageProcessingExecutor.execute(() -> {
+                try {
+                    work.run();
+                } finally {
+                    inFlight.remove(key);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.remove(key);
+            logger.debug("Image processing queue full, {} stays pending", key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${attachment.image-processing.resubmit-interval-ms:300000}")
+    public void resubmitPending() {
+        Query query = new Query(Criteria.where("processingStatus").is(STATUS_PENDING)).limit(500);
+        query.fields().include("id");
+        mongoTemplate.find(query, AttachmentBlob.class).forEach(blob -> schedule(blob.getId()));
+
+        // Väntande bilagor: har de registrerat innehåll bearbetas det (eller så
+        // förs ett redan klart resultat över), annars bearbetas bilagan själv
+        Query attachmentQuery = new Query(Criteria.where("processingStatus").is(STATUS_PENDING)).limit(500);
+        attachmentQuery.fields().include("id").include("sha256");
+        List<Attachment> attachments = mongoTemplate.find(attachmentQuery, Attachment.class);
+        if (attachments.isEmpty()) {
+            return;
+        }
+
+        Set<String> hashes = attachments.stream()
+                .map(Attachment::getSha256)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Query blobQuery = new Query(Criteria.where("id").in(hashes));
+        blobQuery.fields().include("id");
+        Set<String> registered = mongoTemplate.find(blobQuery, AttachmentBlob.class).stream()
+                .map(AttachmentBlob::getId)
+                .collect(Collectors.toSet());
+
+        for (Attachment attachment : attachments) {
+            if (registered.contains(attachment.getSha256())) {
+                schedule(attachment.getSha256());
+            } else {
+                scheduleAttachment(attachment.getId());
+            }
+        }
+    }
+
+    private void process(String blobId) {
+        Query byId = new Query(Criteria.where("id").is(blobId));
+        byId.fields().include("fileId").include("derivatives").include("processingStatus");
+        AttachmentBlob blob = mongoTemplate.findOne(byId, AttachmentBlob.class);
+        if (blob == null) {
+            return;
+        }
+        if (!STATUS_PENDING.equals(blob.getProcessingStatus())) {
+            // Redan bearbetad, se bara till att alla bilagor har resultatet
+            propagate(blobId, blob.getProcessingStatus(), blob.getDerivatives());
+            return;
+        }
+
+        Map<String, String> derivatives = new LinkedHashMap<>();
+        try {
+            try (InputStream in = storageService.openStream(blob.getFileId())) {
+                createDerivatives(in, blobId, derivatives);
+            }
+
+            Query pending = new Query(Criteria.where("id").is(blobId).and("processingStatus").is(STATUS_PENDING));
+            Update update = new Update().set("processingStatus", STATUS_DONE);
+            derivatives.forEach((variant, fileId) -> update.set("derivatives." + variant, fileId));
+            if (mongoTemplate.updateFirst(pending, update, AttachmentBlob.class).getMatchedCount() == 0) {
+                // Innehållet togs bort under bearbetningen
+                derivatives.values().forEach(storageService::delete);
+                return;
+            }
+            propagate(blobId, STATUS_DONE, derivatives);
+        } catch (Exception e) {
+            logger.warn("Image processing failed for blob {}: {}", blobId, e.getMessage());
+            derivatives.values().forEach(storageService::delete);
+            mongoTemplate.updateFirst(byId, new Update().set("processingStatus", STATUS_FAILED), AttachmentBlob.class);
+            propagate(blobId, STATUS_FAILED, null);
+        }
+    }
+
+    private void processAttachment(String attachmentId) {
+        Query pending = new Query(Criteria.where("id").is(attachmentId).and("processingStatus").is(STATUS_PENDING));
+        Query lookup = Query.of(pending);
+        lookup.fields().include("fileId").include("data");
+        Attachment attachment = mongoTemplate.findOne(lookup, Attachment.class);
+        if (attachment == null) {
+            return;
+        }
+
+        Map<String, String> derivatives = new LinkedHashMap<>();
+        try {
+            // Inte migrerade bilagor har fortfarande innehållet i data-fältet
+            InputStream content = attachment.getFileId() != null
+                    ? storageService.openStream(attachment.getFileId())
+                    : attachment.getData() != null ? new ByteArrayInputStream(attachment.getData()) : null;
+            if (content == null) {
+                throw new IOException("Attachment content not found");
+            }
+            try (InputStream in = content) {
+                createDerivatives(in, attachmentId, derivatives);
+            }
+
+            Update update = new Update().set("processingStatus", STATUS_DONE);
+            derivatives.forEach((variant, fileId) -> update.set("derivatives." + variant, fileId));
+            if (mongoTemplate.updateFirst(pending, update, Attachment.class).getMatchedCount() == 0) {
+                // Bilagan togs bort under bearbetningen
+                derivatives.values().forEach(storageService::delete);
+            }
+        } catch (Exception e) {
+            logger.warn("Image processing failed for attachment {}: {}", attachmentId, e.getMessage());
+            derivatives.values().forEach(storageService::delete);
+            mongoTemplate.updateFirst(pending, new Update().set("processingStatus", STATUS_FAILED), Attachment.class);
+        }
+    }
+
+    /**
+     * Skalar bilden till alla varianter och lagrar dem. Lagrade varianter
+     * läggs i {@code derivatives} direkt, så att anroparen kan ta bort dem
+     * om något senare steg misslyckas.
+     */
+    private void createDerivatives(InputStream content, String name, Map<String, String> derivatives)
+            throws IOException {
+        BufferedImage original = ImageIO.read(content);
+        if (original == null) {
+            throw new IOException("Unsupported image format");
+        }
+
+        BufferedImage source = toRgb(original);
+        for (Map.Entry<String, Integer> variant : VARIANTS.entrySet()) {
+            BufferedImage scaled = scale(source, variant.getValue());
+            derivatives.put(variant.getKey(), store(scaled, name, variant.getKey()));
+            if (scaled != source) {
+                scaled.flush();
+            }
+        }
+    }
+
+    // Bilagorna bär en kopia av status och varianter så att listningen slipper slå upp innehållet
+    private void propagate(String blobId, String status, Map<String, String> derivatives) {
+        Update update = new Update().set("processingStatus", status);
+        if (derivatives != null) {
+            derivatives.forEach((variant, fileId) -> update.set("derivatives." + variant, fileId));
+        }
+        mongoTemplate.updateMulti(new Query(Criteria.where("sha256").is(blobId)), update, Attachment.class);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int maxDimension) {
+        if (image.getWidth() <= maxDimension && image.getHeight() <= maxDimension) {
+            return image;
+        }
+        return Scalr.resize(image, Scalr.Method.QUALITY, Scalr.Mode.AUTOMATIC, maxDimension);
+    }
+
+    // JPEG saknar alfakanal, så PNG/GIF ritas om på en RGB-yta
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.drawImage(image, 0, 0, Color.WHITE, null);
+        g.dispose();
+        return rgb;
+    }
+
+    private String store(BufferedImage image, String name, String variant) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "JPEG", outputStream);
+        return storageService.store(
+                new ByteArrayInputStream(outputStream.toByteArray()),
+                name + "-" + variant + ".jpg",
+                "image/jpeg").getFileId();
+    }
+}
@@ -0,0 +1,126 @@
+package com.dftasks.service;
+
+import com.dftasks.exception.FileTooLargeException;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Ström som räknar bytes och beräknar SHA-256 medan innehållet läses, och
+ * avbryter så fort storleksgränsen passeras. De första byten läses i förväg
+ * för att känna igen filtypen utan att buffra hela filen.
+ */
+class IngestInputStream extends FilterInputStream {
+    private static final int SNIFF_LENGTH = 16;
+
+    private final MessageDigest digest;
+    private final long maxSize;
+    private final byte[] header;
+    private long count;
+
+    IngestInputStream(InputStream in, long maxSize) throws IOException {
+        super(new BufferedInputStream(in));
+        this.maxSize = maxSize;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        this.in.mark(SNIFF_LENGTH);
+        byte[] buffer = this.in.readNBytes(SNIFF_LENGTH);
+        this.in.reset();
+        this.header = buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            digest.update((byte) b);
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            digest.update(b, off, n);
+            advance(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        throw new UnsupportedOperationException("skip would bypass hashing");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void advance(int n) throws FileTooLargeException {
+        count += n;
+        if (count > maxSize) {
+            // Avbryter uppladdningen; GridFS tar bort redan skrivna chunks vid IOException
+            throw new FileTooLargeException();
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    String getSha256() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Filtyp utifrån filens inledande bytes, eller null om den är okänd.
+     * Zip-baserade format kan inte skiljas åt här, så för dem används den
+     * angivna typen om den är en docx.
+     */
+    String sniffContentType(String declaredType) {
+        if (startsWith(0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith('G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith('%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        }
+        if (startsWith(0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1)) {
+            return "application/msword";
+        }
+        String docx = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        if (startsWith('P', 'K', 0x03, 0x04) && declaredType != null && declaredType.startsWith(docx)) {
+            return docx;
+        }
+        return null;
+    }
+
+    private boolean startsWith(int... magic) {
+        if (header.length < magic.length) {
+            return false;
+        }
+        byte[] expected = new byte[magic.length];
+        for (int i = 0; i < magic.length; i++) {
+            expected[i] = (byte) magic[i];
+        }
+        return Arrays.equals(header, 0, magic.length, expected, 0, magic.length);
+    }
+}
@@ -3,10 +3,19 @@ package com.dftasks.service;
 import com.dftasks.model.Task;
 import com.dftasks.repository.TaskRepository;
 import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 import org.springframework.scheduling.annotation.Scheduled;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -16,6 +25,13 @@ import java.util.stream.Collectors;
 public class PendingTaskService {
     private final TaskRepository taskRepository;
     private final NotificationService notificationService;
+    private final MongoTemplate mongoTemplate;
+
+    // Adminpanelen frågar ofta; statistiken får vara så här gammal
+    @Value("${pending.statistics.cache-ttl-ms:10000}")
+    private long statisticsTtlMs;
+
+    private volatile CachedStatistics cachedStatistics;
 
     @Scheduled(cron = "0 0 8 * * *") // Kör 08:00 varje dag
     public void checkPendingTasks() {
@@ -30,17 +46,46 @@ public class PendingTaskService {
     }
 
     public Map<String, Long> getPendingTasksStatistics() {
-        long totalPending = taskRepository.countByStatus("pending");
-        long unassigned = taskRepository.findByStatusAndAssignedToIsNull("pending").size();
-        long overdue = taskRepository.findByStatusAndCreatedAtBefore(
-            "pending", 
-            LocalDateTime.now().minusDays(2)
-        ).size();
+        CachedStatistics cached = cachedStatistics;
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.expiresAtMillis > now) {
+            return cached.statistics;
+        }
+
+        Map<String, Long> statistics = computePendingTasksStatistics();
+        cachedStatistics = new CachedStatistics(statistics, now + statisticsTtlMs);
+        return statistics;
+    }
+
+    /**
+     * Anropas när uppgifter skapas, tas bort eller byter status.
+     */
+    public void invalidateStatistics() {
+        cachedStatistics = null;
+    }
+
+    // Alla tre talen räknas i databasen i en och samma aggregering
+    private Map<String, Long> computePendingTasksStatistics() {
+        Date overdueBefore = Date.from(LocalDateTime.now().minusDays(2).atZone(ZoneId.systemDefault()).toInstant());
+
+        Document group = new Document("_id", null)
+                .append("total", new Document("$sum", 1))
+                .append("unassigned", countIf(new Document("$eq",
+                        List.of(new Document("$ifNull", List.of("$assignedTo", null)), null))))
+                .append("overdue", countIf(new Document("$and", List.of(
+                        new Document("$eq", List.of(new Document("$type", "$createdAt"), "date")),
+                        new Document("$lt", List.of("$createdAt", overdueBefore))))));
+
+        // Typad aggregering så att villkoret mappas mot Task som i de härledda frågorna
+        TypedAggregation<Task> aggregation = Aggregation.newAggregation(Task.class,
+                Aggregation.match(Criteria.where("status").is("pending")),
+                stage(new Document("$group", group)));
+        Document result = mongoTemplate.aggregate(aggregation, Document.class).getUniqueMappedResult();
 
         return Map.of(
-            "total", totalPending,
-            "unassigned", unassigned,
-            "overdue", overdue
+            "total", count(result, "total"),
+            "unassigned", count(result, "unassigned"),
+            "overdue", count(result, "overdue")
         );
     }
 
@@ -55,4 +100,20 @@ public class PendingTaskService {
         return task.getCreatedAt().isBefore(twoDaysAgo) || 
                (task.getDueDate() != null && task.getDueDate().isBefore(LocalDateTime.now()));
     }
-} 
\ No newline at end of file
+
+    private static long count(Document result, String field) {
+        Number value = result != null ? result.get(field, Number.class) : null;
+        return value != null ? value.longValue() : 0L;
+    }
+
+    private static Document countIf(Document condition) {
+        return new Document("$sum", new Document("$cond", List.of(condition, 1, 0)));
+    }
+
+    private static AggregationOperation stage(Document stage) {
+        return context -> stage;
+    }
+
+    private record CachedStatistics(Map<String, Long> statistics, long expiresAtMillis) {
+    }
+}
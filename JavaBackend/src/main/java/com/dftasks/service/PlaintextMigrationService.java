@@ -0,0 +1,183 @@
+package com.dftasks.service;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Dekrypterar strängar som skrevs medan alla strängfält krypterades. Bara
+ * fälten som fortfarande krypteras (se MongoConfig) lämnas krypterade.
+ * Värden som inte går att dekryptera med nyckeln är redan klartext och lämnas
+ * orörda, så tjänsten kan köras om.
+ *
+ * Körs en gång, när alla bönor är skapade men innan webbservern startar och
+ * schemalagda jobb och startjobb körs, så att inga samtidiga skrivningar
+ * skrivs över. När allt har migrerats sparas en markör i samlingen
+ * migrations och migreringen hoppas över vid senare starter.
+ */
+@Service
+@RequiredArgsConstructor
+public class PlaintextMigrationService implements SmartInitializingSingleton {
+    private static final Logger logger = LoggerFactory.getLogger(PlaintextMigrationService.class);
+
+    private static final String MARKER_COLLECTION = "migrations";
+    private static final String MARKER_ID = "plaintext-fields";
+
+    private static final List<String> COLLECTIONS = List.of(
+            "users", "tasks", "attachments", "attachment_blobs", "mailbox_sync_state",
+            "token_revocations", "translation_jobs", "translation_memory", "translation_statistics");
+    // Fält i tasks som ska förbli krypterade
+    private static final Set<String> ENCRYPTED_TASK_FIELDS = Set.of("reporterEmail", "metadata");
+
+    private final MongoTemplate mongoTemplate;
+    private final EncryptionService encryptionService;
+
+    @Value("${encryption.plaintext-migration.on-startup:true}")
+    private boolean enabled;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        MongoCollection<Document> markers = mongoTemplate.getCollection(MARKER_COLLECTION);
+        if (markers.find(Filters.eq("_id", MARKER_ID)).first() != null) {
+            return;
+        }
+
+        boolean complete = true;
+        for (String collectionName : COLLECTIONS) {
+            complete &= migrate(collectionName);
+        }
+        if (complete) {
+            markers.insertOne(new Document("_id", MARKER_ID).append("completedAt", new Date()));
+            logger.info("Plaintext migration completed");
+        }
+    }
+
+    /**
+     * @return true om samlingen gicks igenom utan fel och inget dokument
+     *         ändrades under tiden, annars körs migreringen om vid nästa start
+     */
+    public boolean migrate(String collectionName) {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        int migrated = 0;
+        int skipped = 0;
+        int changed = 0;
+        try (MongoCursor<Document> cursor = collection.find().iterator()) {
+            while (cursor.hasNext()) {
+                Document original = cursor.next();
+                Document plain = toPlaintext(collectionName, original);
+                if (plain.equals(original)) {
+                    continue;
+                }
+                switch (save(collection, original, plain)) {
+                    case MIGRATED -> migrated++;
+                    case SKIPPED -> skipped++;
+                    case CHANGED -> changed++;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Plaintext migration of {} stopped after {} documents", collectionName, migrated, e);
+            return false;
+        }
+
+        if (migrated > 0 || skipped > 0 || changed > 0) {
+            logger.info("Decrypted {} documents in {} ({} skipped, {} changed concurrently)",
+                    migrated, collectionName, skipped, changed);
+        }
+        return changed == 0;
+    }
+
+    private enum Outcome { MIGRATED, SKIPPED, CHANGED }
+
+    private Outcome save(MongoCollection<Document> collection, Document original, Document plain) {
+        String collectionName = collection.getNamespace().getCollectionName();
+        // Filtret är hela originalet, så ett dokument som ändrats sedan det lästes lämnas orört
+        Document unchanged = new Document(original);
+        try {
+            if (Objects.equals(original.get("_id"), plain.get("_id"))) {
+                return collection.replaceOne(unchanged, plain).getMatchedCount() > 0
+                        ? Outcome.MIGRATED : Outcome.CHANGED;
+            }
+            // Krypterat _id (t.ex. SHA-256 eller mappnamn) kan inte ändras på plats
+            collection.insertOne(plain);
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            // Finns klartextkopian redan har en tidigare körning avbrutits före borttagningen
+            if (!plain.equals(collection.find(Filters.eq("_id", plain.get("_id"))).first())) {
+                // Samma värde finns redan i klartext, t.ex. ett mejl som sparades två gånger
+                logger.warn("Document {} in {} left encrypted: {}",
+                        original.get("_id"), collectionName, e.getError().getMessage());
+                return Outcome.SKIPPED;
+            }
+        }
+        collection.deleteOne(unchanged);
+        return Outcome.MIGRATED;
+    }
+
+    private Document toPlaintext(String collectionName, Document original) {
+        Document plain = new Document();
+        original.forEach((field, value) -> {
+            if ("tasks".equals(collectionName) && ENCRYPTED_TASK_FIELDS.contains(field)) {
+                plain.put(field, value);
+            } else if ("tasks".equals(collectionName) && "translations".equals(field)) {
+                plain.put(field, unwrapTranslations(value));
+            } else {
+                plain.put(field, decryptLeaves(value));
+            }
+        });
+        return plain;
+    }
+
+    // Översättningar som skrevs med en patch krypterades två gånger, ta bort det yttre lagret
+    private Object unwrapTranslations(Object value) {
+        if (!(value instanceof Map<?, ?> translations)) {
+            return value;
+        }
+        Document result = new Document();
+        translations.forEach((language, ciphertext) -> {
+            String inner = ciphertext instanceof String text ? encryptionService.tryDecrypt(text) : null;
+            boolean doubleEncrypted = inner != null && encryptionService.tryDecrypt(inner) != null;
+            result.put(String.valueOf(language), doubleEncrypted ? inner : ciphertext);
+        });
+        return result;
+    }
+
+    private Object decryptLeaves(Object value) {
+        if (value instanceof String text) {
+            String plain = encryptionService.tryDecrypt(text);
+            return plain != null ? plain : text;
+        }
+        if (value instanceof Map<?, ?> map) {
+            Document result = new Document();
+            map.forEach((key, nested) -> result.put(String.valueOf(key), decryptLeaves(nested)));
+            return result;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> result = new ArrayList<>(list.size());
+            list.forEach(nested -> result.add(decryptLeaves(nested)));
+            return result;
+        }
+        return value;
+    }
+}
@@ -1,15 +1,25 @@
 package com.dftasks.service;
 
+import com.dftasks.dto.TaskCursor;
 import com.dftasks.dto.TaskDTO;
+import com.dftasks.dto.TaskListItem;
+import com.dftasks.dto.TaskPage;
 import com.dftasks.model.Task;
 import com.dftasks.model.User;
 import com.dftasks.repository.TaskRepository;
 import com.dftasks.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -18,7 +28,13 @@ import java.util.Map;
 public class TaskService {
     private final TaskRepository taskRepository;
     private final UserRepository userRepository;
-    private final TranslationService translationService;
+    private final TaskTranslationService taskTranslationService;
+    private final BlindIndexService blindIndexService;
+    private final PendingTaskService pendingTaskService;
+    private final MongoTemplate mongoTemplate;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
 
     public List<Task> getAllTasks(String status, String assignedTo) {
         if (status != null && assignedTo != null) {
@@ -31,6 +47,84 @@ public class TaskService {
         return taskRepository.findAll();
     }
 
+    public TaskPage getTaskPage(String status, String assignedTo, LocalDateTime dueFrom, LocalDateTime dueTo,
+                                String cursor, Integer limit, String language) {
+        if (dueFrom != null && dueTo != null && !dueFrom.isBefore(dueTo)) {
+            throw new IllegalArgumentException("dueFrom must be before dueTo");
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        TaskCursor after = cursor != null && !cursor.isBlank() ? TaskCursor.decode(cursor) : null;
+
+        // Hämta en extra post för att avgöra om det finns fler sidor
+        List<Task> tasks = taskRepository.findListPage(
+                status, assignedTo, dueFrom, dueTo, after, pageSize + 1, translationLanguage(language));
+        return toPage(tasks, pageSize, language);
+    }
+
+    /**
+     * Uppgifter från en anmälare, sökta via blindindexet eftersom adressen är
+     * krypterad. Sidindelad och projicerad som listan.
+     */
+    public TaskPage getTaskPageByReporter(String email, String cursor, Integer limit, String language) {
+        String index = blindIndexService.emailIndex(email);
+        if (index == null) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        TaskCursor after = cursor != null && !cursor.isBlank() ? TaskCursor.decode(cursor) : null;
+
+        List<Task> tasks = taskRepository.findReporterPage(index, after, pageSize + 1, translationLanguage(language));
+        return toPage(tasks, pageSize, language);
+    }
+
+    private TaskPage toPage(List<Task> tasks, int pageSize, String language) {
+        boolean hasMore = tasks.size() > pageSize;
+        if (hasMore) {
+            tasks = tasks.subList(0, pageSize);
+        }
+
+        List<TaskListItem> items = tasks.stream()
+                .map(task -> toListItem(task, language))
+                .toList();
+
+        String nextCursor = null;
+        if (hasMore) {
+            Task last = tasks.get(tasks.size() - 1);
+            nextCursor = new TaskCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+
+        return TaskPage.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    // Accept-Language används som fältnamn i projektionen, så bara kända språk släpps igenom
+    private static String translationLanguage(String language) {
+        return TranslationService.TARGET_LANGUAGES.contains(language) ? language : null;
+    }
+
+    private TaskListItem toListItem(Task task, String language) {
+        // Bara det begärda språket dekrypteras
+        String description = task.getDescription();
+        String translated = task.getTranslations() != null ? task.getTranslations().get(language) : null;
+        if (translated != null) {
+            description = translated;
+        }
+        return TaskListItem.builder()
+                .id(task.getId())
+                .title(task.getTitle())
+                .description(description)
+                .status(task.getStatus())
+                .assignedTo(task.getAssignedTo())
+                .address(task.getAddress())
+                .apartmentNumber(task.getApartmentNumber())
+                .dueDate(task.getDueDate())
+                .createdAt(task.getCreatedAt())
+                .build();
+    }
+
     public Task getTaskById(String id) {
         return taskRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Task not found"));
@@ -46,46 +140,105 @@ public class TaskService {
                 .reporterName(currentUser.getName())
                 .reporterEmail(currentUser.getEmail())
                 .dueDate(taskDTO.getDueDate())
+                .createdAt(LocalDateTime.now())
                 .build();
 
-        // Översätt titel och beskrivning till alla stödda språk
-        Map<String, String> translations = translationService.translateTask(
-                task.getTitle(), 
-                task.getDescription()
-        );
-        task.setTranslations(translations);
+        return saveAndTranslate(task);
+    }
+
+    public Task createTask(Task task) {
+        if (task.getStatus() == null) {
+            task.setStatus("pending");
+        }
+        task.setCreatedAt(LocalDateTime.now());
+        task.setUpdatedAt(LocalDateTime.now());
+        return saveAndTranslate(task);
+    }
 
-        return taskRepository.save(task);
+    /**
+     * Sparar en ny uppgift direkt och översätter beskrivningen i bakgrunden.
+     */
+    private Task saveAndTranslate(Task task) {
+        taskTranslationService.markPending(task);
+        Task savedTask = taskRepository.save(task);
+        pendingTaskService.invalidateStatistics();
+        taskTranslationService.recordSaved(null, true, savedTask);
+        taskTranslationService.scheduleTranslations(savedTask);
+        return savedTask;
+    }
+
+    /**
+     * Sätter en ny beskrivning på en befintlig uppgift, nollställer
+     * översättningarna och översätter i bakgrunden. Skrivs som $set så att
+     * status, tilldelning och kommentarer som ändrats under tiden står kvar.
+     */
+    private Task updateAndTranslate(String id, String description, Update update) {
+        Task pending = Task.builder().id(id).description(description).build();
+        taskTranslationService.markPending(pending);
+        update.set("description", description)
+                .set("translations", pending.getTranslations())
+                .set("translationSourceHash", pending.getTranslationSourceHash())
+                .set("translationStatus", pending.getTranslationStatus())
+                .set("updatedAt", LocalDateTime.now());
+
+        // Statusen före skrivningen behövs för att räknarna ska stämma
+        Query query = byId(id);
+        query.fields().include("translationStatus");
+        Task before = mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(false), Task.class);
+        if (before == null) {
+            throw new RuntimeException("Task not found");
+        }
+        taskTranslationService.recordSaved(before.getTranslationStatus(), false, pending);
+        taskTranslationService.scheduleTranslations(pending);
+        return getTaskById(id);
+    }
+
+    /**
+     * Skriver bara fälten i {@code update}. Översättningarna patchas av
+     * TaskTranslationService i bakgrunden och får inte skrivas över med en
+     * äldre kopia av uppgiften.
+     */
+    private Task updateFields(Query query, Update update) {
+        update.set("updatedAt", LocalDateTime.now());
+        Task updated = mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(true), Task.class);
+        if (updated == null) {
+            throw new RuntimeException("Task not found");
+        }
+        return updated;
+    }
+
+    private static Query byId(String id) {
+        return new Query(Criteria.where("id").is(id));
     }
 
     public Task updateTask(String id, TaskDTO taskDTO) {
-        Task existingTask = getTaskById(id);
-        
+        Update update = new Update();
         if (taskDTO.getTitle() != null) {
-            existingTask.setTitle(taskDTO.getTitle());
-        }
-        if (taskDTO.getDescription() != null) {
-            existingTask.setDescription(taskDTO.getDescription());
+            update.set("title", taskDTO.getTitle());
         }
         if (taskDTO.getDueDate() != null) {
-            existingTask.setDueDate(taskDTO.getDueDate());
+            update.set("dueDate", taskDTO.getDueDate());
         }
 
-        // Uppdatera översättningar om titel eller beskrivning har ändrats
-        if (taskDTO.getTitle() != null || taskDTO.getDescription() != null) {
-            Map<String, String> translations = translationService.translateTask(
-                    existingTask.getTitle(), 
-                    existingTask.getDescription()
-            );
-            existingTask.setTranslations(translations);
+        // Översätt på nytt bara när beskrivningen har ändrats
+        if (taskDTO.getDescription() != null) {
+            return updateAndTranslate(id, taskDTO.getDescription(), update);
         }
 
-        return taskRepository.save(existingTask);
+        return updateFields(byId(id), update);
+    }
+
+    public Task retranslateTask(String id) {
+        return updateAndTranslate(id, getTaskById(id).getDescription(), new Update());
     }
 
     public void deleteTask(String id) {
         Task task = getTaskById(id);
         taskRepository.delete(task);
+        pendingTaskService.invalidateStatistics();
+        taskTranslationService.recordDeleted(task);
     }
 
     public Task updateTaskStatus(String id, String newStatus, String userId) {
@@ -94,15 +247,21 @@ public class TaskService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
         validateStatusTransition(task.getStatus(), newStatus);
-        
-        task.setStatus(newStatus);
-        task.setUpdatedAt(LocalDateTime.now());
-        
+
+        Update update = new Update().set("status", newStatus);
         if (newStatus.equals("in_progress")) {
-            task.setAssignedTo(userId);
+            update.set("assignedTo", userId);
         }
-        
-        return taskRepository.save(task);
+
+        // Övergången validerades mot den lästa statusen, så den måste vara oförändrad
+        Query query = new Query(Criteria.where("id").is(id).and("status").is(task.getStatus()));
+        Task updated = mongoTemplate.findAndModify(query, update.set("updatedAt", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true), Task.class);
+        if (updated == null) {
+            throw new IllegalStateException("Task status changed concurrently");
+        }
+        pendingTaskService.invalidateStatistics();
+        return updated;
     }
 
     private void validateStatusTransition(String currentStatus, String newStatus) {
@@ -136,39 +295,42 @@ public class TaskService {
                 "isActive", true
         );
 
-        if (task.getMetadata() == null) {
-            task.setMetadata(Map.of("comments", List.of(commentData)));
-        } else {
-            List<Map<String, Object>> comments = (List<Map<String, Object>>) 
-                    task.getMetadata().getOrDefault("comments", List.of());
-            comments.add(commentData);
-            task.getMetadata().put("comments", comments);
-        }
+        Map<String, Object> metadata = task.getMetadata() != null
+                ? new HashMap<>(task.getMetadata())
+                : new HashMap<>();
+        List<Map<String, Object>> comments = new ArrayList<>(
+                (List<Map<String, Object>>) metadata.getOrDefault("comments", List.of()));
+        comments.add(commentData);
+        metadata.put("comments", comments);
 
-        return taskRepository.save(task);
+        // Hela metadata skrivs eftersom den krypteras som ett fält, se MongoConfig
+        return updateFields(byId(id), new Update().set("metadata", metadata));
     }
 
     public Task assignTask(String id, String userId) {
-        Task task = getTaskById(id);
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
 
-        task.setAssignedTo(userId);
-        task.setStatus("in progress");
-        
-        return taskRepository.save(task);
+        return updateAndInvalidateStatistics(id, new Update()
+                .set("assignedTo", userId)
+                .set("status", "in progress"));
     }
 
     public Task declineTask(String id, String reason) {
-        Task task = getTaskById(id);
         User currentUser = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
 
-        task.setStatus("cannot fix");
-        task.setDeclinedBy(currentUser.getId());
-        task.setDeclinedAt(LocalDateTime.now());
-        task.setDeclineReason(reason);
+        return updateAndInvalidateStatistics(id, new Update()
+                .set("status", "cannot fix")
+                .set("declinedBy", currentUser.getId())
+                .set("declinedAt", LocalDateTime.now())
+                .set("declineReason", reason));
+    }
 
-        return taskRepository.save(task);
+    // Status eller tilldelning har ändrats, väntande-statistiken är inaktuell
+    private Task updateAndInvalidateStatistics(String id, Update update) {
+        Task updated = updateFields(byId(id), update);
+        pendingTaskService.invalidateStatistics();
+        return updated;
     }
 
     public List<Task> getPendingTasks() {
@@ -183,4 +345,4 @@ public class TaskService {
         List<Task> tasks = taskRepository.findByStatus(status);
         return limit != null ? tasks.stream().limit(limit).toList() : tasks;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,175 @@
+package com.dftasks.service;
+
+import com.dftasks.model.EncryptedTranslations;
+import com.dftasks.model.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Översätter uppgiftsbeskrivningar i bakgrunden. Uppgiften sparas direkt med
+ * status "pending" per språk och varje språk patchas in när det är klart.
+ */
+@Service
+public class TaskTranslationService {
+    private static final Logger logger = LoggerFactory.getLogger(TaskTranslationService.class);
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_DONE = "done";
+    public static final String STATUS_FAILED = "failed";
+
+    private final TranslationService translationService;
+    private final MongoTemplate mongoTemplate;
+    private final ThreadPoolTaskExecutor translationExecutor;
+    private final TranslationStatisticsService translationStatistics;
+    private final EncryptionService encryptionService;
+
+    public TaskTranslationService(
+            TranslationService translationService,
+            MongoTemplate mongoTemplate,
+            @Qualifier("translationExecutor") ThreadPoolTaskExecutor translationExecutor,
+            TranslationStatisticsService translationStatistics,
+            EncryptionService encryptionService) {
+        this.translationService = translationService;
+        this.mongoTemplate = mongoTemplate;
+        this.translationExecutor = translationExecutor;
+        this.translationStatistics = translationStatistics;
+        this.encryptionService = encryptionService;
+    }
+
+    /**
+     * Uppgifter som inte är färdigöversatta till språket: pending, failed
+     * eller utan status. Uttryckt som $in i stället för $ne "done" så att
+     * indexet translationStatus_&lt;språk&gt;_createdAt kan ge sorteringen.
+     */
+    public static Criteria notTranslated(String language) {
+        return Criteria.where("translationStatus." + language).in(STATUS_PENDING, STATUS_FAILED, null);
+    }
+
+    /**
+     * Förbereder uppgiften för översättning innan den sparas: originaltexten
+     * läggs in som svenska och alla målspråk markeras som pending.
+     */
+    public void markPending(Task task) {
+        Map<String, String> translations = new HashMap<>();
+        translations.put(TranslationService.SOURCE_LANGUAGE, task.getDescription());
+        task.setTranslations(EncryptedTranslations.of(translations));
+        task.setTranslationSourceHash(sourceHash(task.getDescription()));
+
+        Map<String, String> status = new HashMap<>();
+        TranslationService.TARGET_LANGUAGES.forEach(lang -> status.put(lang, STATUS_PENDING));
+        task.setTranslationStatus(status);
+    }
+
+    /**
+     * Startar översättning av en sparad uppgift, ett jobb per målspråk.
+     */
+    public void scheduleTranslations(Task task) {
+        String description = task.getDescription();
+        for (String lang : TranslationService.TARGET_LANGUAGES) {
+            try {
+                translationExecutor.execute(() -> translate(task.getId(), description, lang));
+            } catch (TaskRejectedException e) {
+                logger.warn("Translation queue full, task {} ({}) left untranslated", task.getId(), lang);
+                applyTranslation(task.getId(), description, lang, null);
+            }
+        }
+    }
+
+    private void translate(String taskId, String description, String lang) {
+        String translated = null;
+        try {
+            translated = translationService
+                    .translateBatch(List.of(description), List.of(lang), false)
+                    .get(lang).get(0);
+        } catch (Exception e) {
+            logger.warn("Failed to translate task {} to {}: {}", taskId, lang, e.getMessage());
+        }
+        applyTranslation(taskId, description, lang, translated);
+    }
+
+    private void applyTranslation(String taskId, String description, String lang, String translated) {
+        Map<String, String> result = new HashMap<>();
+        result.put(lang, translated);
+        applyTranslations(taskId, description, result);
+    }
+
+    /**
+     * Skriver in färdiga översättningar (null = misslyckad) på uppgiften.
+     * Patchar bara om beskrivningen är oförändrad, annars har en nyare
+     * uppdatering redan schemalagt en egen översättning. Jämförelsen görs på
+     * translationSourceHash; uppgifter sparade innan fältet fanns jämförs på
+     * beskrivningen.
+     *
+     * @return true om uppgiften uppdaterades
+     */
+    public boolean applyTranslations(String taskId, String description, Map<String, String> translated) {
+        Query query = new Query(Criteria.where("id").is(taskId).orOperator(
+                Criteria.where("translationSourceHash").is(sourceHash(description)),
+                Criteria.where("translationSourceHash").exists(false).and("description").is(description)));
+        query.fields().include("translationStatus");
+        // EncryptedTranslationsConverter gäller bara när hela objektet skrivs. En
+        // patch per språk skrivs som den är, så värdena krypteras här, en gång.
+        Update update = new Update().set("translations." + TranslationService.SOURCE_LANGUAGE,
+                encryptionService.encrypt(description));
+        translated.forEach((lang, value) -> update
+                .set("translations." + lang, encryptionService.encrypt(value != null ? value : description))
+                .set("translationStatus." + lang, value != null ? STATUS_DONE : STATUS_FAILED));
+
+        // Föregående status behövs för att uppdatera statistikräknarna exakt
+        Task before = mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(false), Task.class);
+        if (before == null) {
+            logger.debug("Task {} changed or removed before translation finished", taskId);
+            return false;
+        }
+
+        Map<String, String> after = before.getTranslationStatus() != null
+                ? new HashMap<>(before.getTranslationStatus())
+                : new HashMap<>();
+        translated.forEach((lang, value) -> after.put(lang, value != null ? STATUS_DONE : STATUS_FAILED));
+        translationStatistics.recordStatusChange(before.getTranslationStatus(), after);
+        return true;
+    }
+
+    private static String sourceHash(String description) {
+        return description != null ? TranslationMemoryService.hash(description) : null;
+    }
+
+    /**
+     * Uppdaterar statistiken efter att en uppgift har sparats med
+     * {@link #markPending(Task)}.
+     */
+    public void recordSaved(Map<String, String> previousStatus, boolean isNew, Task savedTask) {
+        if (isNew) {
+            translationStatistics.recordTasksCreated(1);
+        } else {
+            translationStatistics.recordStatusChange(previousStatus, savedTask.getTranslationStatus());
+        }
+    }
+
+    /**
+     * Som {@link #recordSaved} för flera nya uppgifter sparade i en skrivning.
+     */
+    public void recordCreated(int count) {
+        if (count > 0) {
+            translationStatistics.recordTasksCreated(count);
+        }
+    }
+
+    public void recordDeleted(Task task) {
+        translationStatistics.recordTaskDeleted(task.getTranslationStatus());
+    }
+}
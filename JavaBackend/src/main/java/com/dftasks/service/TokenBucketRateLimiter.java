@@ -0,0 +1,40 @@
+package com.dftasks.service;
+
+/**
+ * Enkel token bucket: {@code ratePerSecond} token fylls på kontinuerligt upp
+ * till {@code capacity}. Större uttag än kapaciteten tillåts men ger skuld
+ * som nästa anrop får vänta ut.
+ */
+public class TokenBucketRateLimiter {
+    private final double ratePerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double ratePerSecond, double capacity) {
+        if (ratePerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public synchronized void acquire(int permits) throws InterruptedException {
+        refill();
+        double required = Math.min(permits, capacity);
+        while (tokens < required) {
+            long waitMillis = (long) Math.ceil((required - tokens) / ratePerSecond * 1000);
+            wait(Math.max(waitMillis, 1));
+            refill();
+        }
+        tokens -= permits;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,118 @@
+package com.dftasks.service;
+
+import com.dftasks.model.TokenRevocation;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Återkallade token för självbärande JWT (jwt.self-contained). Varje
+ * instans håller ett Bloomfilter och en exakt karta i minnet och läser om
+ * samlingen token_revocations med jämna mellanrum, så att filtret kan
+ * avgöra giltighet utan databasanrop.
+ */
+@Service
+public class TokenRevocationService {
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final long jwtExpiration;
+
+    private volatile Snapshot snapshot = new Snapshot(new BloomFilter(1, 0.01), Map.of());
+
+    public TokenRevocationService(
+            MongoTemplate mongoTemplate,
+            @Value("${jwt.expiration}") long jwtExpiration) {
+        this.mongoTemplate = mongoTemplate;
+        this.jwtExpiration = jwtExpiration;
+    }
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    /**
+     * Återkallar alla token som användaren har fått hittills.
+     */
+    public void revoke(String userId) {
+        if (userId == null) {
+            return;
+        }
+        Date now = new Date();
+        mongoTemplate.upsert(
+                new Query(Criteria.where("userId").is(userId)),
+                new Update()
+                        .set("revokedAt", now)
+                        .set("expiresAt", new Date(now.getTime() + jwtExpiration)),
+                TokenRevocation.class);
+
+        // Gäller direkt på den här instansen, övriga ser det vid nästa refresh
+        synchronized (this) {
+            Map<String, Long> revoked = new HashMap<>(snapshot.revokedAt);
+            revoked.put(userId, now.getTime());
+            snapshot = Snapshot.of(revoked);
+        }
+    }
+
+    /**
+     * iat i JWT har sekundprecision medan revokedAt har millisekunder, så
+     * båda jämförs i hela sekunder. En token som utfärdas i samma sekund som
+     * återkallelsen, t.ex. vid inloggningen direkt efter, är giltig.
+     */
+    public boolean isRevoked(String userId, Date issuedAt) {
+        Snapshot current = snapshot;
+        if (!current.filter.mightContain(userId)) {
+            return false;
+        }
+        Long revokedAt = current.revokedAt.get(userId);
+        if (revokedAt == null) {
+            return false;
+        }
+        return issuedAt == null || issuedAt.getTime() / 1000 < revokedAt / 1000;
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval-ms:10000}")
+    public void refresh() {
+        try {
+            long started = System.currentTimeMillis();
+            Query query = new Query(Criteria.where("expiresAt").gt(new Date(started)));
+            List<TokenRevocation> revocations = mongoTemplate.find(query, TokenRevocation.class);
+
+            Map<String, Long> revoked = new HashMap<>();
+            revocations.forEach(r -> revoked.put(r.getUserId(), r.getRevokedAt().getTime()));
+            synchronized (this) {
+                // Lokala återkallelser som gjordes under frågan får inte försvinna
+                snapshot.revokedAt.forEach((userId, revokedAt) -> {
+                    if (revokedAt >= started) {
+                        revoked.merge(userId, revokedAt, Math::max);
+                    }
+                });
+                snapshot = Snapshot.of(revoked);
+            }
+        } catch (Exception e) {
+            // Behåll den gamla mängden hellre än att släppa in återkallade token
+            logger.warn("Failed to refresh token revocations: {}", e.getMessage());
+        }
+    }
+
+    private record Snapshot(BloomFilter filter, Map<String, Long> revokedAt) {
+        static Snapshot of(Map<String, Long> revokedAt) {
+            BloomFilter filter = new BloomFilter(revokedAt.size() * 2, 0.01);
+            revokedAt.keySet().forEach(filter::add);
+            return new Snapshot(filter, Map.copyOf(revokedAt));
+        }
+    }
+}
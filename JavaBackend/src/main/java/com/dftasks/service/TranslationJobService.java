@@ -0,0 +1,294 @@
+package com.dftasks.service;
+
+import com.dftasks.dto.TaskCursor;
+import com.dftasks.model.Task;
+import com.dftasks.model.TranslationJob;
+import com.dftasks.repository.TaskRepository;
+import com.dftasks.repository.TranslationJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Kör batch-översättningar som beständiga jobb. Jobbets position sparas efter
+ * varje sida så att det kan återupptas efter omstart, även på en annan nod
+ * när den tidigare ägarens heartbeat har gått ut.
+ */
+@Service
+public class TranslationJobService {
+    private static final Logger logger = LoggerFactory.getLogger(TranslationJobService.class);
+
+    public static final String STATUS_QUEUED = "queued";
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_CANCELLED = "cancelled";
+    public static final String STATUS_FAILED = "failed";
+
+    private static final int MAX_FAILED_IDS = 100;
+
+    private final TranslationJobRepository jobRepository;
+    private final TaskRepository taskRepository;
+    private final TranslationService translationService;
+    private final TaskTranslationService taskTranslationService;
+    private final MongoTemplate mongoTemplate;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final String workerId = UUID.randomUUID().toString();
+    private final Object wakeUp = new Object();
+    private volatile boolean isRunning = true;
+
+    @Value("${translation.job.page-size:50}")
+    private int pageSize;
+
+    @Value("${translation.job.poll-interval-ms:5000}")
+    private long pollIntervalMillis;
+
+    @Value("${translation.job.lease-seconds:120}")
+    private long leaseSeconds;
+
+    public TranslationJobService(
+            TranslationJobRepository jobRepository,
+            TaskRepository taskRepository,
+            TranslationService translationService,
+            TaskTranslationService taskTranslationService,
+            MongoTemplate mongoTemplate,
+            @Value("${translation.job.tasks-per-second:5}") double tasksPerSecond,
+            @Value("${translation.job.burst:20}") double burst) {
+        this.jobRepository = jobRepository;
+        this.taskRepository = taskRepository;
+        this.translationService = translationService;
+        this.taskTranslationService = taskTranslationService;
+        this.mongoTemplate = mongoTemplate;
+        this.rateLimiter = new TokenBucketRateLimiter(tasksPerSecond, burst);
+    }
+
+    @PostConstruct
+    public void startWorker() {
+        Thread workerThread = new Thread(this::runWorker);
+        workerThread.setDaemon(true);
+        workerThread.setName("translation-job-worker");
+        workerThread.start();
+        logger.info("Translation job worker started");
+    }
+
+    @PreDestroy
+    public void stopWorker() {
+        isRunning = false;
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    public TranslationJob createJob(String filterStatus, Integer limit) {
+        TranslationJob job = jobRepository.save(TranslationJob.builder()
+                .status(STATUS_QUEUED)
+                .filterStatus(filterStatus)
+                .limit(limit)
+                .failedTaskIds(new ArrayList<>())
+                .createdAt(LocalDateTime.now())
+                .build());
+
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+        return job;
+    }
+
+    public TranslationJob getJob(String id) {
+        return jobRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Translation job not found"));
+    }
+
+    public List<TranslationJob> getRecentJobs() {
+        return jobRepository.findTop20ByOrderByCreatedAtDesc();
+    }
+
+    public TranslationJob cancelJob(String id) {
+        Query query = new Query(Criteria.where("id").is(id)
+                .and("status").in(STATUS_QUEUED, STATUS_RUNNING));
+        Update update = new Update()
+                .set("status", STATUS_CANCELLED)
+                .set("finishedAt", LocalDateTime.now());
+        mongoTemplate.updateFirst(query, update, TranslationJob.class);
+        return getJob(id);
+    }
+
+    private void runWorker() {
+        while (isRunning) {
+            try {
+                TranslationJob job = claimNextJob();
+                if (job != null) {
+                    runJob(job);
+                    continue;
+                }
+                synchronized (wakeUp) {
+                    wakeUp.wait(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                isRunning = false;
+            } catch (Exception e) {
+                logger.error("Unexpected error in translation job worker", e);
+                sleep(pollIntervalMillis);
+            }
+        }
+    }
+
+    /**
+     * Tar ett köat jobb, eller ett körande jobb vars ägare har slutat skicka
+     * heartbeat (t.ex. efter omstart).
+     */
+    private TranslationJob claimNextJob() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("status").is(STATUS_QUEUED),
+                Criteria.where("status").is(STATUS_RUNNING).and("workerId").is(workerId),
+                Criteria.where("status").is(STATUS_RUNNING).and("heartbeatAt").lt(now.minusSeconds(leaseSeconds))))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        Update update = new Update()
+                .set("status", STATUS_RUNNING)
+                .set("workerId", workerId)
+                .set("heartbeatAt", now);
+
+        TranslationJob job = mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(true), TranslationJob.class);
+        if (job != null && job.getStartedAt() == null) {
+            mongoTemplate.updateFirst(new Query(Criteria.where("id").is(job.getId())),
+                    new Update().set("startedAt", now), TranslationJob.class);
+        }
+        return job;
+    }
+
+    private void runJob(TranslationJob job) throws InterruptedException {
+        logger.info("Running translation job {} from position {}", job.getId(), job.getProcessed());
+        try {
+            while (isRunning) {
+                int remaining = job.getLimit() != null ? job.getLimit() - job.getProcessed() : Integer.MAX_VALUE;
+                if (remaining <= 0) {
+                    finish(job, STATUS_COMPLETED, null);
+                    return;
+                }
+
+                TaskCursor after = job.getCursorId() != null
+                        ? new TaskCursor(job.getCursorCreatedAt(), job.getCursorId())
+                        : null;
+                List<Task> page = taskRepository.findListPage(
+                        job.getFilterStatus(), null, after, Math.min(pageSize, remaining), null);
+                if (page.isEmpty()) {
+                    finish(job, STATUS_COMPLETED, null);
+                    return;
+                }
+
+                rateLimiter.acquire(page.size());
+                translatePage(job, page);
+
+                Task last = page.get(page.size() - 1);
+                job.setCursorCreatedAt(last.getCreatedAt());
+                job.setCursorId(last.getId());
+                if (!saveProgress(job)) {
+                    logger.info("Translation job {} was cancelled or taken over", job.getId());
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Translation job {} failed: {}", job.getId(), e.getMessage());
+            finish(job, STATUS_FAILED, e.getMessage());
+        }
+    }
+
+    private void translatePage(TranslationJob job, List<Task> page) {
+        List<String> descriptions = page.stream().map(Task::getDescription).toList();
+        Map<String, List<String>> translated =
+                translationService.translateBatch(descriptions, TranslationService.TARGET_LANGUAGES, false);
+
+        for (int i = 0; i < page.size(); i++) {
+            Task task = page.get(i);
+            job.setProcessed(job.getProcessed() + 1);
+            if (task.getDescription() == null) {
+                continue;
+            }
+
+            Map<String, String> translations = new HashMap<>();
+            boolean allDone = true;
+            for (String lang : TranslationService.TARGET_LANGUAGES) {
+                String value = translated.get(lang).get(i);
+                translations.put(lang, value);
+                allDone &= value != null;
+            }
+
+            try {
+                taskTranslationService.applyTranslations(task.getId(), task.getDescription(), translations);
+            } catch (Exception e) {
+                logger.error("Error processing task {}: {}", task.getId(), e.getMessage());
+                allDone = false;
+            }
+
+            if (allDone) {
+                job.setSucceeded(job.getSucceeded() + 1);
+            } else {
+                job.setFailed(job.getFailed() + 1);
+                if (job.getFailedTaskIds().size() < MAX_FAILED_IDS) {
+                    job.getFailedTaskIds().add(task.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sparar position och räknare, men bara om jobbet fortfarande körs av
+     * den här workern. Returnerar false om det har avbrutits.
+     */
+    private boolean saveProgress(TranslationJob job) {
+        Query query = new Query(Criteria.where("id").is(job.getId())
+                .and("status").is(STATUS_RUNNING)
+                .and("workerId").is(workerId));
+        Update update = new Update()
+                .set("cursorCreatedAt", job.getCursorCreatedAt())
+                .set("cursorId", job.getCursorId())
+                .set("processed", job.getProcessed())
+                .set("succeeded", job.getSucceeded())
+                .set("failed", job.getFailed())
+                .set("failedTaskIds", job.getFailedTaskIds())
+                .set("heartbeatAt", LocalDateTime.now());
+        return mongoTemplate.updateFirst(query, update, TranslationJob.class).getMatchedCount() > 0;
+    }
+
+    private void finish(TranslationJob job, String status, String error) {
+        Query query = new Query(Criteria.where("id").is(job.getId())
+                .and("status").is(STATUS_RUNNING)
+                .and("workerId").is(workerId));
+        Update update = new Update()
+                .set("status", status)
+                .set("error", error)
+                .set("finishedAt", LocalDateTime.now());
+        mongoTemplate.updateFirst(query, update, TranslationJob.class);
+        logger.info("Translation job {} {}: {} processed, {} failed",
+                job.getId(), status, job.getProcessed(), job.getFailed());
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            isRunning = false;
+        }
+    }
+}
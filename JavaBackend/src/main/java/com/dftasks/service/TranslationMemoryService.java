@@ -0,0 +1,181 @@
+package com.dftasks.service;
+
+import com.dftasks.model.TranslationMemoryEntry;
+import com.dftasks.repository.TranslationMemoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Översättningsminne i två nivåer: en begränsad LRU i processen framför
+ * samlingen translation_memory, nycklat på innehållshash + målspråk.
+ */
+@Service
+public class TranslationMemoryService {
+    private static final Logger logger = LoggerFactory.getLogger(TranslationMemoryService.class);
+
+    private final TranslationMemoryRepository repository;
+    private final long maxLocalChars;
+
+    // accessOrder=true ger LRU-ordning; skyddas av lås på localCache
+    private final LinkedHashMap<String, String> localCache = new LinkedHashMap<>(256, 0.75f, true);
+    private long localChars;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder persistentHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TranslationMemoryService(
+            TranslationMemoryRepository repository,
+            @Value("${translation.memory.max-local-chars:2000000}") long maxLocalChars) {
+        this.repository = repository;
+        this.maxLocalChars = maxLocalChars;
+    }
+
+    public Optional<String> lookup(String text, String targetLang) {
+        return Optional.ofNullable(lookupAll(List.of(text), targetLang).get(text));
+    }
+
+    /**
+     * Slår upp flera texter för samma målspråk. Det som saknas lokalt hämtas
+     * från Mongo i en enda fråga. Texter utan träff saknas i resultatet.
+     */
+    public Map<String, String> lookupAll(Collection<String> texts, String targetLang) {
+        Map<String, String> found = new HashMap<>();
+        Map<String, String> missingByKey = new HashMap<>();
+
+        synchronized (localCache) {
+            for (String text : texts) {
+                String key = key(text, targetLang);
+                String cached = localCache.get(key);
+                if (cached != null) {
+                    found.put(text, cached);
+                } else {
+                    missingByKey.put(key, text);
+                }
+            }
+        }
+        localHits.add(found.size());
+
+        if (!missingByKey.isEmpty()) {
+            try {
+                for (TranslationMemoryEntry entry : repository.findAllById(missingByKey.keySet())) {
+                    String text = missingByKey.remove(entry.getId());
+                    if (text != null) {
+                        found.put(text, entry.getTranslatedText());
+                        putLocal(entry.getId(), entry.getTranslatedText());
+                        persistentHits.increment();
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Translation memory lookup failed: {}", e.getMessage());
+            }
+            misses.add(missingByKey.size());
+        }
+
+        return found;
+    }
+
+    public void store(String text, String targetLang, String translatedText) {
+        storeAll(Map.of(text, translatedText), targetLang);
+    }
+
+    public void storeAll(Map<String, String> translations, String targetLang) {
+        if (translations.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<TranslationMemoryEntry> entries = translations.entrySet().stream()
+                .map(entry -> TranslationMemoryEntry.builder()
+                        .id(key(entry.getKey(), targetLang))
+                        .sourceHash(hash(entry.getKey()))
+                        .targetLanguage(targetLang)
+                        .translatedText(entry.getValue())
+                        .createdAt(now)
+                        .build())
+                .toList();
+        entries.forEach(entry -> putLocal(entry.getId(), entry.getTranslatedText()));
+
+        try {
+            repository.saveAll(entries);
+        } catch (Exception e) {
+            logger.warn("Failed to persist translation memory entries: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        long local = localHits.sum();
+        long persistent = persistentHits.sum();
+        long miss = misses.sum();
+        long total = local + persistent + miss;
+
+        int entries;
+        long chars;
+        synchronized (localCache) {
+            entries = localCache.size();
+            chars = localChars;
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("localHits", local);
+        stats.put("persistentHits", persistent);
+        stats.put("misses", miss);
+        stats.put("hitRatio", total > 0 ? (double) (local + persistent) / total : 0);
+        stats.put("localEntries", entries);
+        stats.put("localChars", chars);
+        stats.put("maxLocalChars", maxLocalChars);
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private void putLocal(String key, String value) {
+        long weight = value.length();
+        if (weight > maxLocalChars) {
+            return;
+        }
+
+        synchronized (localCache) {
+            String previous = localCache.put(key, value);
+            localChars += weight - (previous != null ? previous.length() : 0);
+
+            // Storleksbaserad utrensning: ta bort äldst använda tills vi är under gränsen
+            Iterator<Map.Entry<String, String>> it = localCache.entrySet().iterator();
+            while (localChars > maxLocalChars && it.hasNext()) {
+                Map.Entry<String, String> eldest = it.next();
+                localChars -= eldest.getValue().length();
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static String key(String text, String targetLang) {
+        return hash(text) + ":" + targetLang;
+    }
+
+    static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.dftasks.service;
+
+import com.dftasks.dto.TaskCursor;
+import com.dftasks.dto.TaskPriorityDTO;
+import com.dftasks.dto.TaskSummary;
+import com.dftasks.model.Task;
+import com.dftasks.model.TranslationStatistics;
+import com.dftasks.repository.TaskRepository;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Översättningsrapporter som beräknas i MongoDB med indexerade räkningar och
+ * aggregeringar. En uppgift räknas som översatt till ett språk när
+ * translationStatus.&lt;språk&gt; är "done"; endast räknare och sidor med
+ * sammanfattningar skickas tillbaka.
+ */
+@Service
+@RequiredArgsConstructor
+public class TranslationReportService {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private final MongoTemplate mongoTemplate;
+    private final TaskRepository taskRepository;
+
+    /**
+     * Räknar om översättningsstatistiken från grunden. Varje tal är en
+     * räkning mot indexet translationStatus_&lt;språk&gt;_createdAt, ingen genomläsning av
+     * hela samlingen.
+     */
+    public TranslationStatistics computeTranslationStatistics() {
+        List<String> languages = TranslationService.TARGET_LANGUAGES;
+
+        Map<String, Long> translatedByLanguage = new HashMap<>();
+        for (String lang : languages) {
+            translatedByLanguage.put(lang, taskRepository.countTranslated(lang));
+        }
+        long tasksWithTranslations = mongoTemplate.count(new Query(new Criteria().orOperator(languages.stream()
+                .map(lang -> Criteria.where("translationStatus." + lang).is(TaskTranslationService.STATUS_DONE))
+                .toArray(Criteria[]::new))), Task.class);
+
+        return TranslationStatistics.builder()
+                .id(TranslationStatistics.GLOBAL_ID)
+                .totalTasks(mongoTemplate.estimatedCount(Task.class))
+                .tasksWithTranslations(tasksWithTranslations)
+                .translatedByLanguage(translatedByLanguage)
+                .build();
+    }
+
+    /**
+     * Antal uppgifter som saknar översättning per språk, plus en sida
+     * sammanfattningar per språk (nyast först). Markören är en position i
+     * createdAt/id-ordningen och gäller för alla språk; för att bläddra i ett
+     * språk skickas språket och dess nextCursor tillbaka.
+     */
+    public Map<String, Object> getMissingTranslations(String language, String status, String cursor, Integer limit) {
+        List<String> languages = language != null ? List.of(language) : TranslationService.TARGET_LANGUAGES;
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        TaskCursor after = cursor != null && !cursor.isBlank() ? TaskCursor.decode(cursor) : null;
+
+        Map<String, Long> missingCounts = new HashMap<>();
+        Map<String, List<TaskSummary>> missingTranslations = new HashMap<>();
+        Map<String, String> nextCursors = new HashMap<>();
+        for (String lang : languages) {
+            missingCounts.put(lang, taskRepository.countMissingTranslations(lang, status));
+
+            List<Task> page = taskRepository.findMissingTranslationPage(lang, status, after, pageSize + 1);
+            if (page.size() > pageSize) {
+                page = page.subList(0, pageSize);
+                Task last = page.get(page.size() - 1);
+                nextCursors.put(lang, new TaskCursor(last.getCreatedAt(), last.getId()).encode());
+            }
+            missingTranslations.put(lang, page.stream()
+                    .map(task -> new TaskSummary(task.getId(), task.getTitle(), task.getStatus(), task.getCreatedAt()))
+                    .toList());
+        }
+
+        long totalTasks = status != null
+                ? mongoTemplate.count(new Query(Criteria.where("status").is(status)), Task.class)
+                : mongoTemplate.estimatedCount(Task.class);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("totalTasks", totalTasks);
+        response.put("missingCounts", missingCounts);
+        response.put("missingTranslations", missingTranslations);
+        response.put("nextCursors", nextCursors);
+        return response;
+    }
+
+    public List<TaskPriorityDTO> getTranslationPriorities(String language, Integer limit) {
+        List<String> languages = language != null ? List.of(language) : TranslationService.TARGET_LANGUAGES;
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Object> missingParts = new ArrayList<>();
+        for (String lang : languages) {
+            missingParts.add(new Document("$cond", List.of(isTranslated(lang), List.of(), List.of(lang))));
+        }
+
+        // Högre prioritet för nyare uppgifter
+        Document agePriority = new Document("$switch", new Document("branches", List.of(
+                branch(new Document("$gte", List.of("$createdAt", daysAgo(now, 7))), 30),
+                branch(new Document("$gte", List.of("$createdAt", daysAgo(now, 30))), 20),
+                branch(new Document("$gte", List.of("$createdAt", daysAgo(now, 90))), 10)))
+                .append("default", 0));
+
+        // Prioritera baserat på status
+        Document statusPriority = new Document("$switch", new Document("branches", List.of(
+                branch(new Document("$eq", List.of(new Document("$toLower", "$status"), "pending")), 40),
+                branch(new Document("$eq", List.of(new Document("$toLower", "$status"), "in_progress")), 30),
+                branch(new Document("$eq", List.of(new Document("$toLower", "$status"), "completed")), 10)))
+                .append("default", 5));
+
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(Aggregation.match(new Criteria().orOperator(languages.stream()
+                .map(TaskTranslationService::notTranslated)
+                .toArray(Criteria[]::new))));
+        stages.add(stage(new Document("$project", new Document("title", 1)
+                .append("status", 1)
+                .append("createdAt", 1)
+                .append("missingTranslations", new Document("$concatArrays", missingParts))
+                .append("priority", new Document("$add", List.of(agePriority, statusPriority))))));
+        // priority finns inte på Task, så sorteringen skrivs rått
+        stages.add(stage(new Document("$sort", new Document("priority", -1).append("createdAt", -1))));
+        if (limit != null) {
+            stages.add(Aggregation.limit(limit));
+        }
+
+        // Typad så att villkoren mappas mot Task
+        return mongoTemplate.aggregate(Aggregation.newAggregation(Task.class, stages), TaskPriorityDTO.class)
+                .getMappedResults();
+    }
+
+    // Rå Document-steg mappas inte, och drivrutinen skriver LocalDateTime som UTC.
+    // createdAt skrivs i systemets tidszon, så gränserna görs om på samma sätt.
+    private static Date daysAgo(LocalDateTime now, int days) {
+        return Date.from(now.minusDays(days).atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static Document isTranslated(String lang) {
+        return new Document("$eq", List.of("$translationStatus." + lang, TaskTranslationService.STATUS_DONE));
+    }
+
+    private static Document branch(Document condition, int value) {
+        return new Document("case", condition).append("then", value);
+    }
+
+    private static AggregationOperation stage(Document stage) {
+        return context -> stage;
+    }
+}
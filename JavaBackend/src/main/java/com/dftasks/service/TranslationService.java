@@ -1,28 +1,157 @@
 package com.dftasks.service;
 
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.http.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class TranslationService {
+    private static final Logger logger = LoggerFactory.getLogger(TranslationService.class);
+
+    public static final String SOURCE_LANGUAGE = "sv";
+    public static final List<String> TARGET_LANGUAGES = List.of("en", "pl", "uk");
+
     private final RestTemplate restTemplate = new RestTemplate();
+    private final TranslationMemoryService translationMemory;
     
     @Value("${google.translate.api-key}")
     private String apiKey;
+
+    // v2-API:t tar högst 128 q-värden per anrop; teckengränsen hålls med marginal
+    @Value("${google.translate.max-segments-per-request:128}")
+    private int maxSegmentsPerRequest;
+
+    @Value("${google.translate.max-chars-per-request:30000}")
+    private int maxCharsPerRequest;
     
     private static final String TRANSLATE_URL = 
             "https://translation.googleapis.com/language/translate/v2?key={apiKey}";
 
     public String translate(String text, String targetLang) {
+        // List.of tar inte null; tom text har inget att översätta
+        if (text == null || text.isBlank()) {
+            return text;
+        }
+        return translateBatch(List.of(text), List.of(targetLang)).get(targetLang).get(0);
+    }
+
+    /**
+     * Översätter texten till alla målspråk. Resultatet innehåller även
+     * originaltexten under {@link #SOURCE_LANGUAGE}.
+     */
+    public Map<String, String> translateToAllLanguages(String text) {
+        Map<String, String> translations = new HashMap<>();
+        translations.put(SOURCE_LANGUAGE, text);
+        if (text == null || text.isBlank()) {
+            TARGET_LANGUAGES.forEach(lang -> translations.put(lang, text));
+            return translations;
+        }
+        translateBatch(List.of(text), TARGET_LANGUAGES)
+                .forEach((lang, values) -> translations.put(lang, values.get(0)));
+        return translations;
+    }
+
+    /**
+     * Översätter alla texter till alla målspråk. Returnerar per målspråk en
+     * lista i samma ordning som {@code texts}. Texter som redan finns i
+     * översättningsminnet skickas inte, och resten packas i så få anrop som
+     * API:ts gränser tillåter. Vid fel används originaltexten.
+     */
+    public Map<String, List<String>> translateBatch(List<String> texts, List<String> targets) {
+        return translateBatch(texts, targets, true);
+    }
+
+    /**
+     * Som {@link #translateBatch(List, List)}, men med {@code fallbackToSource = false}
+     * blir misslyckade översättningar null så att anroparen kan se felet.
+     */
+    public Map<String, List<String>> translateBatch(List<String> texts, List<String> targets,
+                                                    boolean fallbackToSource) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+
+        for (String target : targets) {
+            String[] translated = new String[texts.size()];
+            // Unika texter som måste översättas -> deras positioner i indata
+            Map<String, List<Integer>> pending = new LinkedHashMap<>();
+
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i);
+                if (text == null || text.isBlank()) {
+                    translated[i] = text;
+                } else {
+                    pending.computeIfAbsent(text, k -> new ArrayList<>()).add(i);
+                }
+            }
+
+            Map<String, String> remembered = translationMemory.lookupAll(pending.keySet(), target);
+            remembered.forEach((text, value) -> pending.remove(text).forEach(i -> translated[i] = value));
+
+            for (List<String> chunk : chunk(new ArrayList<>(pending.keySet()))) {
+                List<String> response = callTranslateApi(chunk, target);
+                Map<String, String> fresh = new HashMap<>();
+
+                for (int j = 0; j < chunk.size(); j++) {
+                    String source = chunk.get(j);
+                    String value = response != null ? response.get(j) : null;
+                    if (value != null) {
+                        fresh.put(source, value);
+                    } else if (fallbackToSource) {
+                        // Vid fel returneras originaltexten, men den sparas inte i minnet
+                        value = source;
+                    }
+                    for (int i : pending.get(source)) {
+                        translated[i] = value;
+                    }
+                }
+                translationMemory.storeAll(fresh, target);
+            }
+
+            result.put(target, Arrays.asList(translated));
+        }
+        return result;
+    }
+
+    public Map<String, Object> getMemoryStatistics() {
+        return translationMemory.getStatistics();
+    }
+
+    private List<List<String>> chunk(List<String> texts) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentChars = 0;
+
+        for (String text : texts) {
+            boolean full = current.size() >= maxSegmentsPerRequest
+                    || currentChars + text.length() > maxCharsPerRequest;
+            if (full && !current.isEmpty()) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                currentChars = 0;
+            }
+            current.add(text);
+            currentChars += text.length();
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    private List<String> callTranslateApi(List<String> texts, String targetLang) {
         Map<String, Object> body = new HashMap<>();
-        body.put("q", text);
+        body.put("q", texts);
         body.put("target", targetLang);
         body.put("format", "text");
 
@@ -42,14 +171,18 @@ public class TranslationService {
 
             if (response.getBody() != null && 
                 response.getBody().getData() != null && 
-                !response.getBody().getData().getTranslations().isEmpty()) {
-                return response.getBody().getData().getTranslations().get(0).getTranslatedText();
+                response.getBody().getData().getTranslations() != null &&
+                response.getBody().getData().getTranslations().size() == texts.size()) {
+                return response.getBody().getData().getTranslations().stream()
+                        .map(Translation::getTranslatedText)
+                        .toList();
             }
+            logger.warn("Unexpected translation response for {} segments to {}", texts.size(), targetLang);
         } catch (Exception e) {
-            // Logga felet och returnera originaltexten
-            return text;
+            // Logga felet och låt anroparen falla tillbaka på originaltexten
+            logger.warn("Translation to {} failed: {}", targetLang, e.getMessage());
         }
-        return text;
+        return null;
     }
 
     private static class TranslationResponse {
@@ -76,4 +209,4 @@ public class TranslationService {
             this.translatedText = translatedText; 
         }
     }
-} 
\ No newline at end of file
+}
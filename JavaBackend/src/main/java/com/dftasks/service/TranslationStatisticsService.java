@@ -0,0 +1,155 @@
+package com.dftasks.service;
+
+import com.dftasks.model.TranslationStatistics;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Materialiserad översättningsstatistik. Räknarna uppdateras atomiskt med $inc
+ * när uppgifter sparas, översätts eller tas bort, och stäms av mot en full
+ * aggregering med jämna mellanrum för att rätta eventuell drift.
+ */
+@Service
+@RequiredArgsConstructor
+public class TranslationStatisticsService {
+    private static final Logger logger = LoggerFactory.getLogger(TranslationStatisticsService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final TranslationReportService translationReportService;
+
+    public void recordTasksCreated(int count) {
+        if (count > 0) {
+            apply(new Update().inc("totalTasks", count));
+        }
+    }
+
+    public void recordTaskDeleted(Map<String, String> translationStatus) {
+        Update update = new Update().inc("totalTasks", -1);
+        addStatusDelta(update, translationStatus, null);
+        apply(update);
+    }
+
+    /**
+     * Registrerar att en uppgifts translationStatus har gått från
+     * {@code before} till {@code after} (null = saknas).
+     */
+    public void recordStatusChange(Map<String, String> before, Map<String, String> after) {
+        Update update = new Update();
+        if (addStatusDelta(update, before, after)) {
+            apply(update);
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        TranslationStatistics statistics = mongoTemplate.findById(
+                TranslationStatistics.GLOBAL_ID, TranslationStatistics.class);
+        if (statistics == null) {
+            statistics = reconcile();
+        }
+
+        long totalTasks = statistics.getTotalTasks();
+        long tasksWithTranslations = statistics.getTasksWithTranslations();
+        Map<String, Long> translationsByLanguage = new HashMap<>();
+        Map<String, Long> missingTranslations = new HashMap<>();
+        for (String lang : TranslationService.TARGET_LANGUAGES) {
+            long translated = statistics.getTranslatedByLanguage() != null
+                    ? statistics.getTranslatedByLanguage().getOrDefault(lang, 0L)
+                    : 0L;
+            translationsByLanguage.put(lang, translated);
+            missingTranslations.put(lang, totalTasks - translated);
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalTasks", totalTasks);
+        stats.put("tasksWithTranslations", tasksWithTranslations);
+        stats.put("tasksWithoutTranslations", totalTasks - tasksWithTranslations);
+        stats.put("translationsByLanguage", translationsByLanguage);
+        stats.put("missingTranslations", missingTranslations);
+        stats.put("translationCoverage", totalTasks > 0 ?
+            (double) tasksWithTranslations / totalTasks * 100 : 0);
+        stats.put("updatedAt", statistics.getUpdatedAt());
+        stats.put("reconciledAt", statistics.getReconciledAt());
+        return stats;
+    }
+
+    @Scheduled(fixedDelayString = "${translation.statistics.reconcile-interval-ms:3600000}",
+               initialDelayString = "${translation.statistics.reconcile-initial-delay-ms:60000}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            logger.error("Translation statistics reconcile failed: {}", e.getMessage());
+        }
+    }
+
+    public TranslationStatistics reconcile() {
+        TranslationStatistics statistics = translationReportService.computeTranslationStatistics();
+        LocalDateTime now = LocalDateTime.now();
+        statistics.setUpdatedAt(now);
+        statistics.setReconciledAt(now);
+
+        TranslationStatistics previous = mongoTemplate.findById(
+                TranslationStatistics.GLOBAL_ID, TranslationStatistics.class);
+        mongoTemplate.save(statistics);
+
+        if (previous != null && previous.getTotalTasks() != statistics.getTotalTasks()) {
+            logger.info("Translation statistics drift corrected: totalTasks {} -> {}",
+                    previous.getTotalTasks(), statistics.getTotalTasks());
+        }
+        return statistics;
+    }
+
+    /**
+     * Lägger till $inc för skillnaden mellan två statuskartor.
+     * Returnerar false om ingen räknare påverkas.
+     */
+    private boolean addStatusDelta(Update update, Map<String, String> before, Map<String, String> after) {
+        boolean changed = false;
+        boolean anyBefore = false;
+        boolean anyAfter = false;
+
+        for (String lang : TranslationService.TARGET_LANGUAGES) {
+            boolean doneBefore = isDone(before, lang);
+            boolean doneAfter = isDone(after, lang);
+            anyBefore |= doneBefore;
+            anyAfter |= doneAfter;
+            if (doneBefore != doneAfter) {
+                update.inc("translatedByLanguage." + lang, doneAfter ? 1 : -1);
+                changed = true;
+            }
+        }
+        if (anyBefore != anyAfter) {
+            update.inc("tasksWithTranslations", anyAfter ? 1 : -1);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean isDone(Map<String, String> status, String lang) {
+        return status != null && TaskTranslationService.STATUS_DONE.equals(status.get(lang));
+    }
+
+    private void apply(Update update) {
+        try {
+            update.set("updatedAt", LocalDateTime.now());
+            mongoTemplate.upsert(
+                    new Query(Criteria.where("id").is(TranslationStatistics.GLOBAL_ID)),
+                    update,
+                    TranslationStatistics.class);
+        } catch (Exception e) {
+            // Avstämningen rättar räknarna senare
+            logger.warn("Failed to update translation statistics: {}", e.getMessage());
+        }
+    }
+}
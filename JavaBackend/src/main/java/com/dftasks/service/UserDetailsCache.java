@@ -0,0 +1,69 @@
+package com.dftasks.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Begränsad cache med TTL framför userDetailsService, så att
+ * JwtAuthenticationFilter inte frågar Mongo vid varje anrop. UserService
+ * tömmer posten när en användare skapas, ändras eller tas bort; TTL:en
+ * begränsar hur länge andra instanser kan se gamla uppgifter.
+ */
+@Service
+public class UserDetailsCache {
+    private final UserDetailsService userDetailsService;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // accessOrder=true ger LRU-ordning; skyddas av lås på entries
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    public UserDetailsCache(
+            UserDetailsService userDetailsService,
+            @Value("${security.user-cache.max-entries:1000}") int maxEntries,
+            @Value("${security.user-cache.ttl-ms:60000}") long ttlMillis) {
+        this.userDetailsService = userDetailsService;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public UserDetails loadUserByUsername(String username) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(username);
+            if (entry != null && entry.expiresAtMillis > now) {
+                return entry.userDetails;
+            }
+        }
+
+        // Uppslaget görs utanför låset; okända användare cachas inte
+        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        synchronized (entries) {
+            entries.put(username, new Entry(userDetails, now + ttlMillis));
+            if (entries.size() > maxEntries) {
+                Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return userDetails;
+    }
+
+    public void invalidate(String username) {
+        if (username == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(username);
+        }
+    }
+
+    private record Entry(UserDetails userDetails, long expiresAtMillis) {
+    }
+}
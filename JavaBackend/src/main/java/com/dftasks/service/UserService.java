@@ -7,19 +7,24 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
 public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserDetailsCache userDetailsCache;
+    private final TokenRevocationService tokenRevocationService;
 
     public User createUser(User user) {
         if (userRepository.existsByEmail(user.getEmail())) {
             throw new RuntimeException("Email already exists");
         }
         user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userDetailsCache.invalidate(saved.getEmail());
+        return saved;
     }
 
     public List<User> getAllUsers() {
@@ -33,16 +38,32 @@ public class UserService {
 
     public User updateUser(String id, User userDetails) {
         User user = getUserById(id);
+        String previousEmail = user.getEmail();
+        String previousRole = user.getRole();
+        boolean passwordChanged = userDetails.getPassword() != null && !userDetails.getPassword().isEmpty();
         user.setName(userDetails.getName());
         user.setEmail(userDetails.getEmail());
-        if (userDetails.getPassword() != null && !userDetails.getPassword().isEmpty()) {
+        if (passwordChanged) {
             user.setPassword(passwordEncoder.encode(userDetails.getPassword()));
         }
         user.setRole(userDetails.getRole());
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        // Rolländringar och nya lösenord ska gälla direkt
+        userDetailsCache.invalidate(previousEmail);
+        userDetailsCache.invalidate(saved.getEmail());
+        // Självbärande token bär e-post och roll, så gamla token får inte fortsätta gälla
+        if (passwordChanged || !Objects.equals(previousRole, saved.getRole())
+                || !Objects.equals(previousEmail, saved.getEmail())) {
+            tokenRevocationService.revoke(saved.getId());
+        }
+        return saved;
     }
 
     public void deleteUser(String id) {
-        userRepository.deleteById(id);
+        userRepository.findById(id).ifPresent(user -> {
+            userRepository.delete(user);
+            userDetailsCache.invalidate(user.getEmail());
+            tokenRevocationService.revoke(user.getId());
+        });
     }
 } 
\ No newline at end of file
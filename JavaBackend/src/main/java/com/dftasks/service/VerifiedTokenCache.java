@@ -0,0 +1,60 @@
+package com.dftasks.service;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Begränsad cache över JWT:er vars signatur redan är kontrollerad, nycklad
+ * på SHA-256 av token. En post gäller till tokens exp, därefter måste
+ * token verifieras (och avvisas) på nytt.
+ */
+public class VerifiedTokenCache {
+    private final int maxEntries;
+
+    // accessOrder=true ger LRU-ordning; skyddas av lås på entries
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    public VerifiedTokenCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    public Claims get(String tokenHash, long nowMillis) {
+        synchronized (entries) {
+            Entry entry = entries.get(tokenHash);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtMillis <= nowMillis) {
+                entries.remove(tokenHash);
+                return null;
+            }
+            return entry.claims;
+        }
+    }
+
+    public void put(String tokenHash, Claims claims, long expiresAtMillis) {
+        synchronized (entries) {
+            entries.put(tokenHash, new Entry(claims, expiresAtMillis));
+            if (entries.size() > maxEntries) {
+                Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(Claims claims, long expiresAtMillis) {
+    }
+}
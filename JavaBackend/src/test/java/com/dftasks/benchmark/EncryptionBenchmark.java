@@ -0,0 +1,104 @@
+package com.dftasks.benchmark;
+
+import com.dftasks.service.EncryptionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kostnad per fält för den gamla krypteringen (ny AES/ECB-Cipher och nyckel
+ * vid varje anrop) jämfört med EncryptionService (AES-GCM med en Cipher per
+ * tråd). Körs med main-metoden, t.ex. från IDE:n, eller:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.dftasks.benchmark.EncryptionBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class EncryptionBenchmark {
+    private static final String KEY = "0123456789abcdef0123456789abcdef";
+
+    // Ungefär e-postadress, kort beskrivning och lång beskrivning
+    @Param({"24", "512", "8192"})
+    private int length;
+
+    private EncryptionService encryptionService;
+    private String plaintext;
+    private String legacyCiphertext;
+    private String gcmCiphertext;
+
+    @Setup
+    public void setUp() throws Exception {
+        encryptionService = new EncryptionService();
+        ReflectionTestUtils.setField(encryptionService, "encryptionKey", KEY);
+        encryptionService.init();
+
+        plaintext = "x".repeat(length);
+        legacyCiphertext = legacyEncrypt(plaintext);
+        gcmCiphertext = encryptionService.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public String legacyEncrypt() throws Exception {
+        return legacyEncrypt(plaintext);
+    }
+
+    @Benchmark
+    public String legacyDecrypt() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.DECRYPT_MODE, legacyKey());
+        return new String(cipher.doFinal(Base64.getDecoder().decode(legacyCiphertext)), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String gcmEncrypt() {
+        return encryptionService.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public String gcmDecrypt() {
+        return encryptionService.decrypt(gcmCiphertext);
+    }
+
+    // Samma kod som EncryptionService hade före AES-GCM
+    private static String legacyEncrypt(String data) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, legacyKey());
+        return Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static SecretKeySpec legacyKey() {
+        return new SecretKeySpec(KEY.getBytes(StandardCharsets.UTF_8), "AES");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EncryptionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,393 @@
+package com.dftasks.repository;
+
+import com.dftasks.config.EncryptedTranslationsConverter;
+import com.dftasks.config.IndexInitializer;
+import com.dftasks.config.MongoConfig;
+import com.dftasks.dto.TaskCursor;
+import com.dftasks.model.Attachment;
+import com.dftasks.model.Task;
+import com.dftasks.service.EncryptionService;
+import com.dftasks.service.NotificationService;
+import com.dftasks.service.PendingTaskService;
+import com.dftasks.service.TaskTranslationService;
+import com.dftasks.service.TranslationReportService;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kör de riktiga repository- och servicemetoderna mot en seedad Mongo och
+ * kontrollerar med explain() att varje fråga de skickar använder ett index
+ * (ingen COLLSCAN) och inte läser fler dokument än den behöver.
+ * Kräver Docker.
+ */
+@DataMongoTest(properties = "encryption.key=0123456789abcdef0123456789abcdef")
+@Import({MongoConfig.class, EncryptionService.class, EncryptedTranslationsConverter.class, IndexInitializer.class,
+        PendingTaskService.class, TranslationReportService.class, QueryPlanTest.CommandCaptureConfig.class})
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlanTest {
+    private static final int TASKS = 3000;
+    private static final int ATTACHMENTS = 1000;
+    private static final int PAGE = 51;
+    // En markörsida är en $or med tre grenar som var och en kan läsa en hel sida
+    private static final int KEYSET_BRANCHES = 3;
+    private static final List<String> STATUSES = List.of("pending", "in progress", "completed", "cannot fix");
+    private static final Set<String> EXPLAINED_COMMANDS = Set.of("find", "aggregate", "count");
+    // Fält som drivrutinen lägger till och som explain inte accepterar
+    private static final Set<String> SESSION_FIELDS = Set.of("lsid", "txnNumber", "$db", "$clusterTime", "$readPreference");
+
+    @Container
+    static final MongoDBContainer MONGO = new MongoDBContainer("mongo:6.0");
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> MONGO.getReplicaSetUrl("dftasks"));
+    }
+
+    @MockBean
+    private NotificationService notificationService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private TaskRepository taskRepository;
+    @Autowired
+    private AttachmentRepository attachmentRepository;
+    @Autowired
+    private TranslationReportService translationReportService;
+    @Autowired
+    private PendingTaskService pendingTaskService;
+    @Autowired
+    private CommandCapture capture;
+
+    private final List<Task> seeded = new ArrayList<>();
+    private final LocalDateTime now = LocalDateTime.now().withNano(0);
+
+    @BeforeAll
+    void seed() {
+        for (int i = 0; i < TASKS; i++) {
+            Map<String, String> translationStatus = new HashMap<>();
+            translationStatus.put("en", i % 2 == 0 ? TaskTranslationService.STATUS_DONE : TaskTranslationService.STATUS_PENDING);
+            translationStatus.put("pl", i % 10 == 0 ? TaskTranslationService.STATUS_FAILED : TaskTranslationService.STATUS_DONE);
+            // Äldre uppgifter saknar status för ukrainska
+            if (i % 5 != 0) {
+                translationStatus.put("uk", TaskTranslationService.STATUS_DONE);
+            }
+            seeded.add(Task.builder()
+                    .title("Task " + i)
+                    .description("Description " + i)
+                    .status(STATUSES.get(i % STATUSES.size()))
+                    .assignedTo(i % 3 == 0 ? null : "user-" + (i % 7))
+                    // Äldre uppgifter saknar createdAt
+                    .createdAt(i % 150 == 0 ? null : now.minusHours(i))
+                    .dueDate(now.plusDays(i % 90))
+                    .translationStatus(translationStatus)
+                    .reporterEmailIndex("reporter-" + (i % 100))
+                    .messageId("<" + i + "@dftasks.test>")
+                    .build());
+        }
+        mongoTemplate.insert(seeded, Task.class);
+
+        List<Attachment> attachments = new ArrayList<>();
+        for (int i = 0; i < ATTACHMENTS; i++) {
+            attachments.add(Attachment.builder()
+                    .taskId(seeded.get(i % (ATTACHMENTS / 2)).getId())
+                    .fileName("file-" + i + ".jpg")
+                    .contentType("image/jpeg")
+                    .size(1024)
+                    .sha256("sha-" + (i % 50))
+                    .build());
+        }
+        mongoTemplate.insert(attachments, Attachment.class);
+    }
+
+    @Test
+    void findByStatus() {
+        assertIndexed(matching(task -> "in progress".equals(task.getStatus())),
+                () -> taskRepository.findByStatus("in progress"));
+    }
+
+    @Test
+    void findByAssignedTo() {
+        assertIndexed(matching(task -> "user-1".equals(task.getAssignedTo())),
+                () -> taskRepository.findByAssignedTo("user-1"));
+    }
+
+    @Test
+    void findByStatusAndAssignedTo() {
+        assertIndexed(matching(task -> "pending".equals(task.getStatus()) && "user-1".equals(task.getAssignedTo())),
+                () -> taskRepository.findByStatusAndAssignedTo("pending", "user-1"));
+    }
+
+    @Test
+    void findByStatusOrderByCreatedAtDesc() {
+        assertIndexed(matching(task -> "pending".equals(task.getStatus())),
+                () -> taskRepository.findByStatusOrderByCreatedAtDesc("pending"));
+    }
+
+    @Test
+    void findByStatusAndAssignedToIsNull() {
+        assertIndexed(matching(task -> "pending".equals(task.getStatus()) && task.getAssignedTo() == null),
+                () -> taskRepository.findByStatusAndAssignedToIsNull("pending"));
+    }
+
+    @Test
+    void findByStatusAndCreatedAtBefore() {
+        LocalDateTime before = now.minusHours(2000);
+        assertIndexed(matching(task -> "pending".equals(task.getStatus())
+                        && task.getCreatedAt() != null && task.getCreatedAt().isBefore(before)),
+                () -> taskRepository.findByStatusAndCreatedAtBefore("pending", before));
+    }
+
+    @Test
+    void countByStatus() {
+        assertIndexed(matching(task -> "completed".equals(task.getStatus())),
+                () -> taskRepository.countByStatus("completed"));
+    }
+
+    @Test
+    void findListPage() {
+        List<Task> first = assertIndexed(PAGE, () -> taskRepository.findListPage(null, null, null, PAGE, "en"));
+        TaskCursor cursor = cursorAfter(first);
+        assertIndexed(KEYSET_BRANCHES * PAGE, () -> taskRepository.findListPage(null, null, cursor, PAGE, "en"));
+    }
+
+    @Test
+    void findListPageByStatus() {
+        List<Task> first = assertIndexed(PAGE, () -> taskRepository.findListPage("pending", null, null, PAGE, null));
+        TaskCursor cursor = cursorAfter(first);
+        assertIndexed(KEYSET_BRANCHES * PAGE, () -> taskRepository.findListPage("pending", null, cursor, PAGE, null));
+    }
+
+    @Test
+    void findListPageByAssignee() {
+        assertIndexed(PAGE, () -> taskRepository.findListPage(null, "user-1", null, PAGE, null));
+        assertIndexed(PAGE, () -> taskRepository.findListPage("pending", "user-1", null, PAGE, null));
+    }
+
+    @Test
+    void findListPageByDueDate() {
+        // En kalendermånad, som MonthView hämtar den
+        LocalDateTime from = now.plusDays(30);
+        LocalDateTime to = now.plusDays(60);
+        long due = matching(task -> !task.getDueDate().isBefore(from) && task.getDueDate().isBefore(to));
+        List<Task> first = assertIndexed(due, () -> taskRepository.findListPage(null, null, from, to, null, PAGE, null));
+        TaskCursor cursor = cursorAfter(first);
+        assertIndexed(due, () -> taskRepository.findListPage(null, null, from, to, cursor, PAGE, null));
+    }
+
+    @Test
+    void findListPageAfterTasksWithoutCreatedAt() {
+        // Markören står bland uppgifterna utan createdAt, som sorteras sist
+        Task legacy = seeded.stream().filter(task -> task.getCreatedAt() == null).findFirst().orElseThrow();
+        assertIndexed(PAGE, () -> taskRepository.findListPage(null, null, new TaskCursor(null, legacy.getId()), PAGE, null));
+    }
+
+    @Test
+    void findReporterPage() {
+        List<Task> first = assertIndexed(11, () -> taskRepository.findReporterPage("reporter-7", null, 11, "en"));
+        TaskCursor cursor = cursorAfter(first);
+        assertIndexed(KEYSET_BRANCHES * 11, () -> taskRepository.findReporterPage("reporter-7", cursor, 11, "en"));
+    }
+
+    @Test
+    void findMissingTranslationPage() {
+        List<Task> first = assertIndexed(PAGE, () -> taskRepository.findMissingTranslationPage("en", null, null, PAGE));
+        TaskCursor cursor = cursorAfter(first);
+        assertIndexed(KEYSET_BRANCHES * PAGE, () -> taskRepository.findMissingTranslationPage("en", null, cursor, PAGE));
+        assertIndexed(PAGE, () -> taskRepository.findMissingTranslationPage("uk", "pending", null, PAGE));
+    }
+
+    @Test
+    void countMissingAndTranslated() {
+        assertIndexed(matching(task -> !isDone(task, "en")), () -> taskRepository.countMissingTranslations("en", null));
+        assertIndexed(matching(task -> !isDone(task, "pl") && "pending".equals(task.getStatus())),
+                () -> taskRepository.countMissingTranslations("pl", "pending"));
+        assertIndexed(matching(task -> isDone(task, "uk")), () -> taskRepository.countTranslated("uk"));
+    }
+
+    @Test
+    void computeTranslationStatistics() {
+        long translated = 0;
+        for (String lang : List.of("en", "pl", "uk")) {
+            translated += matching(task -> isDone(task, lang));
+        }
+        assertIndexed(translated, () -> translationReportService.computeTranslationStatistics());
+    }
+
+    @Test
+    void getMissingTranslations() {
+        long missing = 0;
+        for (String lang : List.of("en", "pl", "uk")) {
+            missing += matching(task -> !isDone(task, lang));
+        }
+        assertIndexed(missing, () -> translationReportService.getMissingTranslations(null, null, null, 50));
+        assertIndexed(matching(task -> "pending".equals(task.getStatus())),
+                () -> translationReportService.getMissingTranslations("pl", "pending", null, 50));
+    }
+
+    @Test
+    void getTranslationPriorities() {
+        assertIndexed(matching(task -> !isDone(task, "en") || !isDone(task, "pl") || !isDone(task, "uk")),
+                () -> translationReportService.getTranslationPriorities(null, 20));
+    }
+
+    @Test
+    void getPendingTasksStatistics() {
+        assertIndexed(matching(task -> "pending".equals(task.getStatus())),
+                () -> pendingTaskService.getPendingTasksStatistics());
+    }
+
+    @Test
+    void attachmentsByTask() {
+        String taskId = seeded.get(3).getId();
+        assertIndexed(2, () -> attachmentRepository.findByTaskId(taskId));
+        assertIndexed(2, () -> attachmentRepository.findMetadataByTaskId(taskId));
+    }
+
+    @Test
+    void messageIdLookup() {
+        // EmailIngestService förlitar sig på det unika indexet för att hitta dubbletter
+        assertThat(mongoTemplate.indexOps(Task.class).getIndexInfo())
+                .filteredOn(index -> index.isIndexForFields(List.of("messageId")))
+                .extracting(IndexInfo::isUnique)
+                .containsExactly(true);
+        assertIndexed(1, () -> mongoTemplate.findOne(
+                new Query(Criteria.where("messageId").is("<42@dftasks.test>")), Task.class));
+    }
+
+    /**
+     * Kör anropet och explain() på varje find/aggregate/count det skickade.
+     */
+    private <T> T assertIndexed(long maxDocsExamined, Supplier<T> call) {
+        capture.clear();
+        T result = call.get();
+        List<BsonDocument> commands = capture.commands();
+        assertThat(commands).as("commands sent").isNotEmpty();
+
+        for (BsonDocument command : commands) {
+            Document explain = explain(command);
+            List<String> stages = new ArrayList<>();
+            long[] docsExamined = {0};
+            walk(explain, stages, docsExamined);
+
+            assertThat(stages).as("plan stages for %s", command.toJson()).doesNotContain("COLLSCAN");
+            assertThat(docsExamined[0]).as("docs examined for %s", command.toJson())
+                    .isLessThanOrEqualTo(maxDocsExamined);
+        }
+        return result;
+    }
+
+    private Document explain(BsonDocument command) {
+        BsonDocument explained = new BsonDocument();
+        command.forEach((field, value) -> {
+            if (!SESSION_FIELDS.contains(field)) {
+                explained.put(field, value);
+            }
+        });
+        return mongoTemplate.getDb().runCommand(new Document("explain", explained)
+                .append("verbosity", "executionStats"));
+    }
+
+    // Samlar stegnamn och största totalDocsExamined, utom i förkastade planer
+    private void walk(Object node, List<String> stages, long[] docsExamined) {
+        if (node instanceof Map<?, ?> map) {
+            map.forEach((key, value) -> {
+                if ("rejectedPlans".equals(key) || "allPlansExecution".equals(key)) {
+                    return;
+                }
+                if ("stage".equals(key) && value instanceof String stage) {
+                    stages.add(stage);
+                } else if ("totalDocsExamined".equals(key) && value instanceof Number count) {
+                    docsExamined[0] = Math.max(docsExamined[0], count.longValue());
+                } else {
+                    walk(value, stages, docsExamined);
+                }
+            });
+        } else if (node instanceof List<?> list) {
+            list.forEach(value -> walk(value, stages, docsExamined));
+        }
+    }
+
+    private long matching(Predicate<Task> predicate) {
+        return seeded.stream().filter(predicate).count();
+    }
+
+    private static boolean isDone(Task task, String language) {
+        return TaskTranslationService.STATUS_DONE.equals(task.getTranslationStatus().get(language));
+    }
+
+    private static TaskCursor cursorAfter(List<Task> page) {
+        assertThat(page).isNotEmpty();
+        Task last = page.get(page.size() - 1);
+        return new TaskCursor(last.getCreatedAt(), last.getId());
+    }
+
+    static class CommandCapture implements CommandListener {
+        private final List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            String collection = event.getCommand().isString(event.getCommandName())
+                    ? event.getCommand().getString(event.getCommandName()).getValue() : null;
+            if (EXPLAINED_COMMANDS.contains(event.getCommandName())
+                    && ("tasks".equals(collection) || "attachments".equals(collection))) {
+                commands.add(event.getCommand().clone());
+            }
+        }
+
+        List<BsonDocument> commands() {
+            return List.copyOf(commands);
+        }
+
+        void clear() {
+            commands.clear();
+        }
+    }
+
+    @TestConfiguration
+    static class CommandCaptureConfig {
+        @Bean
+        CommandCapture commandCapture() {
+            return new CommandCapture();
+        }
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer captureCommands(CommandCapture commandCapture) {
+            return builder -> builder.addCommandListener(commandCapture);
+        }
+    }
+}
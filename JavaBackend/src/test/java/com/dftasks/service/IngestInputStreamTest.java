@@ -0,0 +1,132 @@
+package com.dftasks.service;
+
+import com.dftasks.exception.FileTooLargeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Storleksgränsen, hashen och filtypskontrollen för uppladdade bilagor.
+ */
+class IngestInputStreamTest {
+    private static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    @Test
+    void abortsWhenMaxSizeIsPassedMidStream() throws IOException {
+        byte[] content = randomBytes(64 * 1024);
+        IngestInputStream ingest = new IngestInputStream(new ByteArrayInputStream(content), 10_000);
+
+        // Läser i små bitar så att gränsen passeras mitt i strömmen
+        byte[] buffer = new byte[1024];
+        assertThatThrownBy(() -> {
+            while (ingest.read(buffer) != -1) {
+                // läs vidare
+            }
+        }).isInstanceOf(FileTooLargeException.class);
+        assertThat(ingest.getCount()).isGreaterThan(10_000).isLessThanOrEqualTo(10_000 + buffer.length);
+    }
+
+    @Test
+    void acceptsContentOfExactlyMaxSize() throws IOException {
+        byte[] content = randomBytes(10_000);
+        IngestInputStream ingest = new IngestInputStream(new ByteArrayInputStream(content), content.length);
+
+        ingest.transferTo(OutputStream.nullOutputStream());
+
+        assertThat(ingest.getCount()).isEqualTo(content.length);
+    }
+
+    @Test
+    void abortsOnSingleByteReads() throws IOException {
+        IngestInputStream ingest = new IngestInputStream(new ByteArrayInputStream(randomBytes(100)), 10);
+
+        assertThatThrownBy(() -> {
+            while (ingest.read() != -1) {
+                // läs vidare
+            }
+        }).isInstanceOf(FileTooLargeException.class);
+        assertThat(ingest.getCount()).isEqualTo(11);
+    }
+
+    @Test
+    void sha256MatchesMessageDigest() throws Exception {
+        byte[] content = randomBytes(200_000);
+        IngestInputStream ingest = new IngestInputStream(new ByteArrayInputStream(content), Long.MAX_VALUE);
+
+        // Filtypen läses före innehållet och får inte påverka hashen
+        ingest.sniffContentType("image/png");
+        ingest.transferTo(OutputStream.nullOutputStream());
+
+        String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        assertThat(ingest.getSha256()).isEqualTo(expected);
+        assertThat(ingest.getCount()).isEqualTo(content.length);
+    }
+
+    @Test
+    void skipIsNotAllowed() throws IOException {
+        IngestInputStream ingest = new IngestInputStream(new ByteArrayInputStream(randomBytes(100)), 1000);
+
+        assertThatThrownBy(() -> ingest.skip(10)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void detectsTypeFromContentNotDeclaredType() throws IOException {
+        byte[] pdf = "%PDF-1.7\n1 0 obj".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(ingest(pdf).sniffContentType("image/png")).isEqualTo("application/pdf");
+    }
+
+    @Test
+    void rejectsSpoofedDeclaredType() throws IOException {
+        byte[] script = "<script>alert(1)</script>".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(ingest(script).sniffContentType("image/jpeg")).isNull();
+        assertThat(ingest(script).sniffContentType("application/pdf")).isNull();
+    }
+
+    @Test
+    void zipIsOnlyAcceptedWhenDeclaredAsDocx() throws IOException {
+        byte[] zip = {'P', 'K', 0x03, 0x04, 0x14, 0x00, 0x06, 0x00, 0x08, 0x00};
+
+        assertThat(ingest(zip).sniffContentType(DOCX)).isEqualTo(DOCX);
+        assertThat(ingest(zip).sniffContentType("application/zip")).isNull();
+        assertThat(ingest(zip).sniffContentType("image/png")).isNull();
+        assertThat(ingest(zip).sniffContentType(null)).isNull();
+    }
+
+    @Test
+    void recognisesImageSignatures() throws IOException {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10};
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00};
+        byte[] gif = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(ingest(jpeg).sniffContentType("image/png")).isEqualTo("image/jpeg");
+        assertThat(ingest(png).sniffContentType("image/jpeg")).isEqualTo("image/png");
+        assertThat(ingest(gif).sniffContentType(null)).isEqualTo("image/gif");
+    }
+
+    @Test
+    void tooShortContentIsUnknown() throws IOException {
+        assertThat(ingest(new byte[]{(byte) 0xFF, (byte) 0xD8}).sniffContentType("image/jpeg")).isNull();
+        assertThat(ingest(new byte[0]).sniffContentType("image/jpeg")).isNull();
+    }
+
+    private static IngestInputStream ingest(byte[] content) throws IOException {
+        return new IngestInputStream(new ByteArrayInputStream(content), Long.MAX_VALUE);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
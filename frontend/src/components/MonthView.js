@@ -104,10 +104,23 @@ function MonthView() {
     }
   }, []);
 
+  // Kalendern visar en månad, så bara uppgifter med dueDate i den hämtas
+  const loadTasks = useCallback(() => {
+    const monthStart = new Date(currentMonth.getFullYear(), currentMonth.getMonth(), 1);
+    const nextMonthStart = new Date(currentMonth.getFullYear(), currentMonth.getMonth() + 1, 1);
+    return dispatch(
+      fetchTasks({
+        showInactive: showArchived,
+        dueFrom: format(monthStart, "yyyy-MM-dd'T'HH:mm:ss"),
+        dueTo: format(nextMonthStart, "yyyy-MM-dd'T'HH:mm:ss"),
+      })
+    );
+  }, [dispatch, currentMonth, showArchived]);
+
   useEffect(() => {
-    dispatch(fetchTasks({ showInactive: showArchived }));
+    loadTasks();
     fetchUsers();
-  }, [dispatch, showArchived, fetchUsers]);
+  }, [loadTasks, fetchUsers]);
 
   useEffect(() => {
     const updateSelectedTaskComments = async () => {
@@ -224,7 +237,7 @@ function MonthView() {
   const handleEdit = async (taskData) => {
     try {
       await axiosInstance.patch(`/tasks/${taskData._id}`, taskData);
-      dispatch(fetchTasks({ showInactive: showArchived }));
+      loadTasks();
       toast.success(t("taskUpdated"));
     } catch (error) {
       console.error("Error updating task:", error);
@@ -9,7 +9,7 @@ import { useTaskTranslation } from "../hooks/useTaskTranslation";
 import { jwtDecode } from "jwt-decode";
 import TaskModal from "./TaskModal";
 import { useTaskUtils } from "../utils/taskUtils";
-import { tasksAPI } from "../services/api";
+import { tasksAPI, toTaskPage } from "../services/api";
 import TaskList from "./TaskList";
 
 function TaskManagement({ userRole, userId }) {
@@ -25,6 +25,8 @@ function TaskManagement({ userRole, userId }) {
   const { t, i18n } = useTranslation();
   const [editedStatus, setEditedStatus] = useState(null);
   const [showInactive, setShowInactive] = useState(false);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
 
   const { translateTask, translateTasks, translateComments, currentLanguage } =
     useTaskTranslation();
@@ -65,8 +67,10 @@ function TaskManagement({ userRole, userId }) {
     try {
       setError(null);
       const response = await (showInactive ? tasksAPI.getAllTasks() : tasksAPI.getTasks());
-      const translatedTasks = await translateTasks(response.data);
+      const page = toTaskPage(response.data);
+      const translatedTasks = await translateTasks(page.items);
       setTasks(translatedTasks);
+      setNextCursor(page.nextCursor);
       setLoading(false);
     } catch (error) {
       console.error("Error fetching tasks:", error);
@@ -75,6 +79,23 @@ function TaskManagement({ userRole, userId }) {
     }
   }, [showInactive, translateTasks, t]);
 
+  const loadMoreTasks = async () => {
+    if (!nextCursor) return;
+    try {
+      setLoadingMore(true);
+      const response = await tasksAPI.getTasks({ cursor: nextCursor });
+      const page = toTaskPage(response.data);
+      const translatedTasks = await translateTasks(page.items);
+      setTasks((current) => [...current, ...translatedTasks]);
+      setNextCursor(page.nextCursor);
+    } catch (error) {
+      console.error("Error fetching more tasks:", error);
+      setError(t("errorFetchingTasks"));
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   useEffect(() => {
     fetchTasks();
     fetchUsers(); // Hämta användare när komponenten laddas
@@ -230,6 +251,18 @@ function TaskManagement({ userRole, userId }) {
         }}
       />
 
+      {nextCursor && (
+        <div className="flex justify-center">
+          <button
+            onClick={loadMoreTasks}
+            disabled={loadingMore}
+            className="px-4 py-2 text-sm text-df-primary border border-df-primary rounded-md hover:bg-df-primary/10 disabled:opacity-50 transition-colors duration-150"
+          >
+            {t("loadMore")}
+          </button>
+        </div>
+      )}
+
       {showTaskForm && (
         <div className="fixed inset-0 bg-black bg-opacity-50 flex items-center justify-center z-50">
           <div className="bg-white dark:bg-gray-800 p-6 rounded-lg shadow-xl w-full max-w-md">
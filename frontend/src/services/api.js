@@ -9,9 +9,30 @@ export const authAPI = {
     axiosInstance.post("/auth/reset-password", { token, password }),
 };
 
+// GET /tasks svarar med en sida ({ items, nextCursor }); äldre servrar med en lista
+export const toTaskPage = (data) =>
+  Array.isArray(data)
+    ? { items: data, nextCursor: null }
+    : { items: data?.items || [], nextCursor: data?.nextCursor || null };
+
 // Tasks API
 export const tasksAPI = {
-  getTasks: () => axiosInstance.get("/tasks"),
+  getTasks: (params) => axiosInstance.get("/tasks", { params }),
+  // Följer nextCursor tills alla sidor är hämtade. Begränsa med dueFrom/dueTo
+  // (t.ex. kalenderns månad), annars hämtas hela samlingen.
+  getAllTaskPages: async (params) => {
+    const tasks = [];
+    let cursor = null;
+    do {
+      const response = await axiosInstance.get("/tasks", {
+        params: { ...params, cursor: cursor || undefined },
+      });
+      const page = toTaskPage(response.data);
+      tasks.push(...page.items);
+      cursor = page.nextCursor;
+    } while (cursor);
+    return tasks;
+  },
   getAllTasks: () => axiosInstance.get("/tasks/all"),
   getTask: (id) => axiosInstance.get(`/tasks/${id}`),
   createTask: (taskData) => axiosInstance.post("/tasks", taskData),
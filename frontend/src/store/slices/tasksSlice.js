@@ -5,10 +5,11 @@ import { toast } from "react-hot-toast";
 // Async thunks
 export const fetchTasks = createAsyncThunk(
   "tasks/fetchTasks",
-  async ({ showInactive = false }, { rejectWithValue }) => {
+  async ({ showInactive = false, dueFrom, dueTo }, { rejectWithValue }) => {
     try {
-      const response = await tasksAPI.getTasks(showInactive);
-      return response.data;
+      // Bara den visade månaden hämtas, med största sidstorleken
+      const tasks = await tasksAPI.getAllTaskPages({ dueFrom, dueTo, limit: 200 });
+      return showInactive ? tasks : tasks.filter((task) => task.isActive !== false);
     } catch (error) {
       return rejectWithValue(
         error.response?.data || "Kunde inte hämta uppgifter"